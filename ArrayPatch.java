@@ -0,0 +1,457 @@
+package pumpkins;
+import java.io.*;
+import java.util.*;
+/**
+ * The ArrayPatch class keeps its plants as integer ids rather than objects.
+ * A plant's position in the ripe or unripe list and the time it is due to
+ * ripen live in primitive arrays indexed by id, and the ids of composted
+ * plants are reused. Plants due to ripen at the same time share a single
+ * RipenBatchEvent and clock timer, so a ripening cycle allocates nothing
+ * per plant. Together this keeps the heap at a few tens of bytes per plant
+ * and lets a patch hold tens of millions of plants.
+ */
+public class ArrayPatch extends Patch {
+	private final static int NOT_SCHEDULED = -1;
+	private final static int SCHEDULE_SLOTS = 1 << 17;
+	private final IdList unripe;
+	private final IdList ripe;
+	private final RipenBatchEvent[] schedule;
+	private int[] positions; // Index of each plant in its ripe or unripe list
+	private int[] ripenTimes; // Time each unripe plant is due to ripen
+	private int[] freeIds;
+	private int freeCount;
+	private int nextId;
+	private RipenBatchEvent spareBatches; // Ripened, for reuse; schedule lock
+	private int[] picked; // Reused by pick() and compostRipe(); picking lock
+	private final Object picking;
+	/**
+	 * Create a new pumpkin patch
+	 */
+	public ArrayPatch(Program program, Jack jack){
+		this(program, jack, program.getConfig().getInitialPlants());
+	}
+	/**
+	 * Create a new pumpkin patch expected to start with the given number of
+	 * plants
+	 */
+	public ArrayPatch(Program program, Jack jack, int plantsBegin){
+		super(program, jack, plantsBegin);
+		int capacity = Math.max(this.plantsBegin, 16);
+		this.unripe = new IdList(capacity);
+		this.ripe = new IdList(capacity);
+		this.schedule = new RipenBatchEvent[ArrayPatch.SCHEDULE_SLOTS];
+		this.positions = new int[capacity];
+		this.ripenTimes = new int[capacity];
+		this.freeIds = new int[16];
+		this.freeCount = 0;
+		this.nextId = 0;
+		this.picked = new int[16];
+		this.picking = new Object();
+	}
+	/**
+	 * Grow a new unripe plant in the patch
+	 */
+	public void plant(){
+		if (this.singleThreaded)
+			this.plantUnripe(1, false);
+		else {
+			synchronized(this.unripe){
+				this.plantUnripe(1, false);
+			}
+		}
+	}
+	/**
+	 * Grow a number of new unripe plants at once
+	 */
+	public void plant(int count){
+		if (this.singleThreaded)
+			this.plantUnripe(count, true);
+		else {
+			synchronized(this.unripe){
+				this.plantUnripe(count, true);
+			}
+		}
+	}
+	/**
+	 * Get number of ripe plants in patch
+	 */
+	public int getPumpkinCount(){
+		if (this.singleThreaded)
+			return this.ripe.size;
+		synchronized(this.ripe){
+			return this.ripe.size;
+		}
+	}
+	// Get number of unripe plants in patch
+	int getUnripeCount(){
+		if (this.singleThreaded)
+			return this.unripe.size;
+		synchronized(this.unripe){
+			return this.unripe.size;
+		}
+	}
+	/**
+	 * Pick a number of ripe plants from the patch
+	 */
+	public int pick(int quantity){
+		if (this.singleThreaded)
+			return this.pickRipe(quantity);
+		synchronized(this.picking){
+			return this.pickRipe(quantity);
+		}
+	}
+	// Pull up to count unripe plants for compost
+	int compostUnripe(int count){
+		if (this.singleThreaded)
+			return this.pullUnripe(count);
+		synchronized(this.unripe){
+			return this.pullUnripe(count);
+		}
+	}
+	// Pull up to count ripe plants for compost, taking their ids into the
+	// picked array as pick() does
+	int compostRipe(int count){
+		if (this.singleThreaded)
+			return this.pullRipe(count);
+		synchronized(this.picking){
+			return this.pullRipe(count);
+		}
+	}
+	// Move a batch of plants from the unripe list to the ripe list. Plants
+	// composted or replanted since the batch was scheduled are skipped, and
+	// the batch is left holding the plants that did ripen.
+	void ripen(RipenBatchEvent batch){
+		if (this.singleThreaded)
+			this.removeBatch(batch);
+		else {
+			synchronized(this.schedule){
+				this.removeBatch(batch);
+			}
+		}
+		int ripened;
+		if (this.singleThreaded)
+			ripened = this.removeUnripe(batch);
+		else {
+			synchronized(this.unripe){
+				ripened = this.removeUnripe(batch);
+			}
+		}
+		batch.size = ripened;
+		if (ripened == 0)
+			return;
+		if (this.singleThreaded)
+			this.addRipe(batch, ripened);
+		else {
+			synchronized(this.ripe){
+				this.addRipe(batch, ripened);
+			}
+		}
+		this.notifyJack();
+	}
+	// Write the ids in each list, the free ids and each plant's ripening
+	// time. Batches are written with the timers that run them.
+	void save(DataOutputStream out) throws IOException {
+		out.writeInt(this.nextId);
+		for (int id = 0; id < this.nextId; id++)
+			out.writeInt(this.ripenTimes[id]);
+		this.unripe.save(out);
+		this.ripe.save(out);
+		out.writeInt(this.freeCount);
+		for (int i = 0; i < this.freeCount; i++)
+			out.writeInt(this.freeIds[i]);
+	}
+	// Read back the plants written by save() into a new, empty patch
+	void restore(DataInputStream in) throws IOException {
+		synchronized(this.unripe){
+			synchronized(this.ripe){
+				this.nextId = in.readInt();
+				if (this.nextId > this.positions.length){
+					this.positions = new int[this.nextId];
+					this.ripenTimes = new int[this.nextId];
+				}
+				Arrays.fill(this.positions, -1);
+				for (int id = 0; id < this.nextId; id++)
+					this.ripenTimes[id] = in.readInt();
+				this.unripe.restore(in);
+				this.ripe.restore(in);
+				this.freeCount = in.readInt();
+				this.freeIds = new int[Math.max(16, this.freeCount)];
+				for (int i = 0; i < this.freeCount; i++)
+					this.freeIds[i] = in.readInt();
+			}
+		}
+	}
+	// Recreate a checkpointed batch and put it back in the schedule. The
+	// caller restores its timer.
+	RipenBatchEvent restoreBatch(int deadline, int[] plants){
+		RipenBatchEvent batch = new RipenBatchEvent(this, deadline);
+		batch.plants = plants.length == 0 ? batch.plants : plants;
+		batch.size = plants.length;
+		synchronized(this.schedule){
+			int slot = deadline & (ArrayPatch.SCHEDULE_SLOTS - 1);
+			batch.next = this.schedule[slot];
+			this.schedule[slot] = batch;
+		}
+		return batch;
+	}
+	// Choose when an unripe plant will ripen and add it to the batch for
+	// that time, creating the batch and its timer if it is the first. A
+	// new batch's timer is held back for setHeldTimers() if hold is set.
+	// Caller holds the unripe lock.
+	private void scheduleRipening(int id, boolean hold){
+		if (this.program.timerExpired()){
+			this.ripenTimes[id] = ArrayPatch.NOT_SCHEDULED;
+			return;
+		}
+		int duration = Math.max(0, this.ripenDuration());
+		int deadline = this.program.getTimestamp() + duration;
+		this.ripenTimes[id] = deadline;
+		RipenBatchEvent created;
+		if (this.singleThreaded)
+			created = this.addToBatch(id, deadline);
+		else {
+			synchronized(this.schedule){
+				created = this.addToBatch(id, deadline);
+			}
+		}
+		if (created == null)
+			return;
+		if (hold)
+			this.holdTimer(created, duration);
+		else
+			this.program.setTimer(created, duration);
+	}
+	// Keep a batch that has ripened, been counted and logged for reuse
+	void recycle(RipenBatchEvent batch){
+		if (this.singleThreaded){
+			batch.next = this.spareBatches;
+			this.spareBatches = batch;
+		} else {
+			synchronized(this.schedule){
+				batch.next = this.spareBatches;
+				this.spareBatches = batch;
+			}
+		}
+	}
+	// Add count new plants to the unripe list, reusing free ids first. If
+	// hold is set, the timers of new batches are held back and set
+	// together. Caller holds the unripe lock.
+	private void plantUnripe(int count, boolean hold){
+		int needed = this.nextId + Math.max(0, count - this.freeCount);
+		if (needed > this.positions.length)
+			this.grow(needed);
+		this.unripe.ensureCapacity(this.unripe.size + count);
+		for (int i = 0; i < count; i++){
+			int id = this.freeCount > 0 ? this.freeIds[--this.freeCount] :
+					this.nextId++;
+			this.unripe.add(id);
+			this.scheduleRipening(id, hold);
+		}
+		if (hold)
+			this.setHeldTimers();
+	}
+	// Move up to quantity ripe plants back to the unripe list, each due to
+	// ripen again. Caller holds the picking lock.
+	private int pickRipe(int quantity){
+		int count;
+		if (this.singleThreaded)
+			count = this.removeRipe(quantity);
+		else {
+			synchronized(this.ripe){
+				count = this.removeRipe(quantity);
+			}
+		}
+		if (this.singleThreaded)
+			this.replant(count);
+		else {
+			synchronized(this.unripe){
+				this.replant(count);
+			}
+		}
+		return count;
+	}
+	// Take up to quantity ids off the ripe list into picked. Returns how
+	// many. Caller holds the ripe lock.
+	private int removeRipe(int quantity){
+		quantity = Math.min(quantity, this.ripe.size);
+		if (this.picked.length < quantity)
+			this.picked = new int[Math.max(quantity, 2 * this.picked.length)];
+		for (int count = 0; count < quantity; count++)
+			this.picked[count] = this.ripe.removeLast();
+		return quantity;
+	}
+	// Free up to count unripe ids. Returns how many. Caller holds the
+	// unripe lock.
+	private int pullUnripe(int count){
+		int composted = 0;
+		while (this.unripe.size > 0 && composted < count){
+			int id = this.unripe.removeLast();
+			this.ripenTimes[id] = ArrayPatch.NOT_SCHEDULED;
+			this.free(id);
+			++composted;
+		}
+		return composted;
+	}
+	// Take up to count ripe ids into picked and free them. Returns how
+	// many. Caller holds the picking lock.
+	private int pullRipe(int count){
+		int n;
+		if (this.singleThreaded)
+			n = this.removeRipe(count);
+		else {
+			synchronized(this.ripe){
+				n = this.removeRipe(count);
+			}
+		}
+		if (this.singleThreaded)
+			this.freePicked(n);
+		else {
+			synchronized(this.unripe){
+				this.freePicked(n);
+			}
+		}
+		return n;
+	}
+	// Free the first count picked ids. Caller holds the unripe lock.
+	private void freePicked(int count){
+		for (int i = 0; i < count; i++)
+			this.free(this.picked[i]);
+	}
+	// Put the first count picked ids back on the unripe list and schedule
+	// their ripening. Caller holds the unripe lock.
+	private void replant(int count){
+		for (int i = 0; i < count; i++){
+			this.unripe.add(this.picked[i]);
+			this.scheduleRipening(this.picked[i], false);
+		}
+	}
+	// Take a batch's plants that are still due to ripen with it off the
+	// unripe list, moving them to the front of the batch. Returns how many.
+	// Caller holds the unripe lock.
+	private int removeUnripe(RipenBatchEvent batch){
+		int ripened = 0;
+		for (int i = 0; i < batch.size; i++){
+			int id = batch.plants[i];
+			if (this.ripenTimes[id] == batch.deadline && this.unripe.remove(id)){
+				this.ripenTimes[id] = ArrayPatch.NOT_SCHEDULED;
+				batch.plants[ripened++] = id;
+			}
+		}
+		return ripened;
+	}
+	// Add the first count plants of a batch to the ripe list. Caller holds
+	// the ripe lock.
+	private void addRipe(RipenBatchEvent batch, int count){
+		for (int i = 0; i < count; i++)
+			this.ripe.add(batch.plants[i]);
+	}
+	// Add a plant to the batch due at deadline. Returns the batch if it
+	// is new, and so needs a timer, or null. Caller holds the schedule
+	// lock.
+	private RipenBatchEvent addToBatch(int id, int deadline){
+		RipenBatchEvent created = null;
+		int slot = deadline & (ArrayPatch.SCHEDULE_SLOTS - 1);
+		RipenBatchEvent batch = this.schedule[slot];
+		while (batch != null && batch.deadline != deadline)
+			batch = batch.next;
+		if (batch == null){
+			batch = created = this.spareBatches;
+			if (batch == null)
+				batch = created = new RipenBatchEvent(this, deadline);
+			else {
+				this.spareBatches = batch.next;
+				batch.reset(deadline);
+			}
+			batch.next = this.schedule[slot];
+			this.schedule[slot] = batch;
+		}
+		if (batch.size == batch.plants.length)
+			batch.plants = Arrays.copyOf(batch.plants, batch.size * 2);
+		batch.plants[batch.size++] = id;
+		return created;
+	}
+	// Unlink a batch from its schedule slot. Caller holds the schedule lock.
+	private void removeBatch(RipenBatchEvent batch){
+		int slot = batch.deadline & (ArrayPatch.SCHEDULE_SLOTS - 1);
+		RipenBatchEvent b = this.schedule[slot];
+		if (b == batch)
+			this.schedule[slot] = batch.next;
+		else {
+			while (b != null && b.next != batch)
+				b = b.next;
+			if (b != null)
+				b.next = batch.next;
+		}
+	}
+	// Return a composted plant's id for reuse. Caller holds the unripe lock.
+	private void free(int id){
+		if (this.freeCount == this.freeIds.length)
+			this.freeIds = Arrays.copyOf(this.freeIds, this.freeCount * 2);
+		this.freeIds[this.freeCount++] = id;
+	}
+	// Make room for at least the given number of plant ids. Caller holds
+	// the unripe lock; the ripe lock is taken too since ripe list updates
+	// also write positions.
+	private void grow(int needed){
+		if (this.singleThreaded)
+			this.resize(needed);
+		else {
+			synchronized(this.ripe){
+				this.resize(needed);
+			}
+		}
+	}
+	// Copy the position and ripening time arrays into larger ones. Caller
+	// holds the unripe and ripe locks.
+	private void resize(int needed){
+		int capacity = Math.max(needed, this.positions.length * 2);
+		this.positions = Arrays.copyOf(this.positions, capacity);
+		this.ripenTimes = Arrays.copyOf(this.ripenTimes, capacity);
+	}
+	// Unordered list of plant ids with constant time add, remove and
+	// remove-last. Each plant's index in the list is kept in positions.
+	private class IdList {
+		private int[] ids;
+		private int size;
+		IdList(int capacity){
+			this.ids = new int[capacity];
+			this.size = 0;
+		}
+		void add(int id){
+			if (this.size == this.ids.length)
+				this.ids = Arrays.copyOf(this.ids, this.size * 2);
+			this.ids[this.size] = id;
+			ArrayPatch.this.positions[id] = this.size++;
+		}
+		boolean remove(int id){
+			int i = ArrayPatch.this.positions[id];
+			if (i < 0 || i >= this.size || this.ids[i] != id)
+				return false;
+			int last = this.ids[--this.size];
+			this.ids[i] = last;
+			ArrayPatch.this.positions[last] = i;
+			ArrayPatch.this.positions[id] = -1;
+			return true;
+		}
+		void ensureCapacity(int capacity){
+			if (capacity > this.ids.length)
+				this.ids = Arrays.copyOf(this.ids, Math.max(capacity, this.ids.length * 2));
+		}
+		int removeLast(){
+			int id = this.ids[--this.size];
+			ArrayPatch.this.positions[id] = -1;
+			return id;
+		}
+		void save(DataOutputStream out) throws IOException {
+			out.writeInt(this.size);
+			for (int i = 0; i < this.size; i++)
+				out.writeInt(this.ids[i]);
+		}
+		// Replace the list with the ids written by save(), in the same order
+		void restore(DataInputStream in) throws IOException {
+			this.size = 0;
+			for (int n = in.readInt(); n > 0; n--)
+				this.add(in.readInt());
+		}
+	}
+}
@@ -1,24 +1,30 @@
 package pumpkins;
 /**
- * The BeginGatherEvent occurs when Jack starts the process of picking pumpkins
- * in the patch. It is followed by a CompleteGatherEvent after the number of 
- * pumpkins * Jack.PICK_TIME.
+ * The BeginGatherEvent occurs when one of Jack's workers starts the process
+ * of picking pumpkins in the patch. It is followed by a CompleteGatherEvent
+ * after the number of pumpkins * the pick time.
  */
 public class BeginGatherEvent extends PumpkinEvent {
 	private final Jack jack;
+	private final Jack.Worker worker;
 	private final Patch patch;
 	/**
 	 * Initiailize an event
 	 */	
-	public BeginGatherEvent(Jack jack, Patch patch){
+	public BeginGatherEvent(Jack jack, Jack.Worker worker, Patch patch){
 		this.jack = jack;
+		this.worker = worker;
 		this.patch = patch;
 		this.silent = true;
 	}
 	/**
 	 * Execute event
 	 */
-	public void run(){
-		jack.gather(this.patch);
+	protected void perform(){
+		jack.gather(this.worker, this.patch);
+	}
+	// The patch the worker gathers in
+	Patch getPatch(){
+		return this.patch;
 	}
 }
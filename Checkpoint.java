@@ -0,0 +1,228 @@
+package pumpkins;
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+/**
+ * The Checkpoint class saves the whole state of a quiescent Program to a
+ * compressed file, and loads it into a new Program so a run can continue
+ * from where the checkpoint was taken. The file holds the clock time, the
+ * random number streams, Jack's stash, crew and orders, the patch and
+ * every pending timer with its event. Plants and orders are written as
+ * numbers rather than objects, so a patch of a million plants takes a few
+ * megabytes. Restoring several programs from one checkpoint, each with its
+ * own --seed, forks independent runs from a shared warmed-up state.
+ */
+public class Checkpoint {
+	private final static int MAGIC = 0x504b4331; // "PKC1"
+	private final static int VERSION = 3;
+	private final static int BUFFER = 1 << 16;
+	// Tags for the kinds of event a pending timer may hold
+	private final static byte RIPEN = 1;
+	private final static byte RIPEN_BATCH = 2;
+	private final static byte ORDER = 3;
+	private final static byte COMPLETE_GATHER = 4;
+	private final static byte COMPLETE_ORDER = 5;
+	private final static byte TIMER_EXPIRED = 6;
+	private final static byte ORDER_REPORT = 7;
+	private final Program program;
+	private final Clock clock;
+	private final Jack jack;
+	private final Patch patch;
+	private final OrderGenerator generator;
+	private final Patch[] shards;
+	/**
+	 * Create a checkpoint for the given program and its parts
+	 */
+	public Checkpoint(Program program, Clock clock, Jack jack, Patch patch,
+			OrderGenerator generator){
+		this.program = program;
+		this.clock = clock;
+		this.jack = jack;
+		this.patch = patch;
+		this.generator = generator;
+		this.shards = patch.getShards();
+	}
+	/**
+	 * Write the program's state to a file. Call only while no events are
+	 * running.
+	 */
+	public void write(File file) throws IOException {
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new GZIPOutputStream(new FileOutputStream(file), Checkpoint.BUFFER)))){
+			Config config = this.program.getConfig();
+			out.writeInt(Checkpoint.MAGIC);
+			out.writeInt(Checkpoint.VERSION);
+			out.writeBoolean(config.isArrayPlants());
+			out.writeInt(config.getPatchShards());
+			out.writeInt(config.getWorkers());
+			out.writeInt(config.getInitialPlants());
+
+			out.writeInt(this.clock.getTimestamp());
+			this.program.saveRandom(out);
+			this.jack.save(out);
+			this.patch.save(out);
+			// In the order they were set, so a restored single-threaded clock
+			// runs timers due together in the same order. Trajectory samples
+			// observe the run rather than being part of it; a restored
+			// program sets its own.
+			List<TimingWheel.Timer> timers = this.clock.getTimers();
+			for (Iterator<TimingWheel.Timer> i = timers.iterator(); i.hasNext();)
+				if (i.next().getEvent() instanceof TrajectoryEvent)
+					i.remove();
+			Collections.sort(timers, new Comparator<TimingWheel.Timer>(){
+				public int compare(TimingWheel.Timer a, TimingWheel.Timer b){
+					return Long.compare(a.getSequence(), b.getSequence());
+				}
+			});
+			out.writeInt(timers.size());
+			for (TimingWheel.Timer t : timers)
+				this.writeTimer(out, t);
+		}
+	}
+	/**
+	 * Open a checkpoint and read its header. The patch and crew options in
+	 * the configuration are set to those of the checkpointed program, so
+	 * the parts of a new Program match the state to be read into them.
+	 */
+	public static DataInputStream open(File file, Config config) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new GZIPInputStream(new FileInputStream(file), Checkpoint.BUFFER)));
+		try {
+			if (in.readInt() != Checkpoint.MAGIC)
+				throw new IOException("Not a checkpoint file");
+			int version = in.readInt();
+			if (version != Checkpoint.VERSION)
+				throw new IOException("Unsupported checkpoint version " + version);
+			config.setArrayPlants(in.readBoolean())
+					.setPatchShards(in.readInt())
+					.setWorkers(in.readInt())
+					.setInitialPlants(in.readInt());
+			return in;
+		} catch (IOException ioe){
+			in.close();
+			throw ioe;
+		}
+	}
+	/**
+	 * Read the state that follows the header into the program, then close
+	 * the stream. The program's parts must be new, with no timers set.
+	 */
+	public void read(DataInputStream in) throws IOException {
+		try {
+			this.clock.restore(in.readInt());
+			this.program.restoreRandom(in);
+			this.jack.restore(in);
+			this.patch.restore(in);
+			for (int n = in.readInt(); n > 0; n--){
+				long deadline = in.readLong();
+				this.clock.restoreTimer(this.readEvent(in), deadline);
+			}
+		} finally {
+			in.close();
+		}
+	}
+	// Write a timer's deadline, then its event as a tag and the numbers
+	// needed to recreate it
+	private void writeTimer(DataOutputStream out, TimingWheel.Timer t) throws IOException {
+		PumpkinEvent event = t.getEvent();
+		out.writeLong(t.getDeadline());
+		if (event instanceof RipenEvent){
+			RipenEvent e = (RipenEvent)event;
+			out.writeByte(Checkpoint.RIPEN);
+			out.writeInt(this.shardOf(e.getPatch()));
+			out.writeInt(e.getPatch().idOf(e.getPlant()));
+		} else if (event instanceof RipenBatchEvent){
+			RipenBatchEvent e = (RipenBatchEvent)event;
+			out.writeByte(Checkpoint.RIPEN_BATCH);
+			out.writeInt(this.shardOf(e.getPatch()));
+			out.writeInt(e.deadline);
+			out.writeInt(e.size);
+			for (int i = 0; i < e.size; i++)
+				out.writeInt(e.plants[i]);
+		} else if (event instanceof RipenPlantsEvent){
+			RipenPlantsEvent e = (RipenPlantsEvent)event;
+			out.writeByte(Checkpoint.RIPEN_BATCH);
+			out.writeInt(this.shardOf(e.getPatch()));
+			out.writeInt(e.deadline);
+			out.writeInt(e.size);
+			for (int i = 0; i < e.size; i++)
+				out.writeInt(e.getPatch().idOf(e.plants[i]));
+		} else if (event instanceof OrderEvent){
+			out.writeByte(Checkpoint.ORDER);
+		} else if (event instanceof CompleteGatherEvent){
+			CompleteGatherEvent e = (CompleteGatherEvent)event;
+			out.writeByte(Checkpoint.COMPLETE_GATHER);
+			out.writeInt(e.getWorker().getNumber());
+			out.writeInt(e.getQuantity());
+		} else if (event instanceof CompleteOrderEvent){
+			Jack.Order o = ((CompleteOrderEvent)event).getOrder();
+			out.writeByte(Checkpoint.COMPLETE_ORDER);
+			out.writeInt(o.getTimestamp());
+			out.writeInt(o.getWorker().getNumber());
+		} else if (event instanceof TimerExpiredEvent){
+			out.writeByte(Checkpoint.TIMER_EXPIRED);
+		} else if (event instanceof OrderReportEvent){
+			out.writeByte(Checkpoint.ORDER_REPORT);
+		} else
+			throw new IOException("Cannot checkpoint a pending " +
+					event.getClass().getSimpleName());
+	}
+	// Recreate the event written by writeTimer()
+	private PumpkinEvent readEvent(DataInputStream in) throws IOException {
+		byte tag = in.readByte();
+		switch (tag){
+			case Checkpoint.RIPEN: {
+				PlantPatch shard = this.shard(in.readInt(), PlantPatch.class);
+				return new RipenEvent(this.program, shard.plantOf(in.readInt()),
+						shard, this.jack);
+			}
+			case Checkpoint.RIPEN_BATCH: {
+				Patch shard = this.shard(in.readInt(), Patch.class);
+				int deadline = in.readInt();
+				int[] plants = new int[in.readInt()];
+				for (int i = 0; i < plants.length; i++)
+					plants[i] = in.readInt();
+				if (shard instanceof ArrayPatch)
+					return ((ArrayPatch)shard).restoreBatch(deadline, plants);
+				if (!(shard instanceof PlantPatch))
+					throw new IOException("Checkpoint does not match the patch");
+				PlantPatch plantPatch = (PlantPatch)shard;
+				Plant[] batch = new Plant[plants.length];
+				for (int i = 0; i < plants.length; i++)
+					batch[i] = plantPatch.plantOf(plants[i]);
+				return plantPatch.restoreBatch(deadline, batch);
+			}
+			case Checkpoint.ORDER:
+				return this.generator.getEvent();
+			case Checkpoint.COMPLETE_GATHER: {
+				Jack.Worker worker = this.jack.getWorker(in.readInt());
+				return worker.completeGatherEvent(this.patch, in.readInt());
+			}
+			case Checkpoint.COMPLETE_ORDER: {
+				int timestamp = in.readInt();
+				Jack.Worker worker = this.jack.getWorker(in.readInt());
+				return this.jack.restoreOrder(timestamp, worker).getCompleteEvent();
+			}
+			case Checkpoint.TIMER_EXPIRED:
+				return new TimerExpiredEvent(this.jack);
+			case Checkpoint.ORDER_REPORT:
+				return new OrderReportEvent(this.program, this.jack);
+			default:
+				throw new IOException("Unknown event in checkpoint: " + tag);
+		}
+	}
+	// Position of a shard in the patch
+	private int shardOf(Patch shard) throws IOException {
+		for (int i = 0; i < this.shards.length; i++)
+			if (this.shards[i] == shard)
+				return i;
+		throw new IOException("Timer for a plant outside the patch");
+	}
+	// Get a shard by position, checking it is of the expected kind
+	private <T extends Patch> T shard(int index, Class<T> type) throws IOException {
+		if (index < 0 || index >= this.shards.length ||
+				!type.isInstance(this.shards[index]))
+			throw new IOException("Checkpoint does not match the patch");
+		return type.cast(this.shards[index]);
+	}
+}
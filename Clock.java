@@ -1,36 +1,72 @@
 package pumpkins;
 import java.util.*;
-import java.util.concurrent.*;
 /**
  * The Clock class increments a counter and keeps a list of timed events
  * which it gives to the program to execute.
  */
 public class Clock implements Runnable {
 	private final int SLEEP_DURATION = 1;
+	// Orders timers by when they were set
+	private final static Comparator<TimingWheel.Timer> BY_SEQUENCE =
+			new Comparator<TimingWheel.Timer>(){
+				public int compare(TimingWheel.Timer a, TimingWheel.Timer b){
+					return Long.compare(a.getSequence(), b.getSequence());
+				}
+			};
 	private final Program program;
+	private final boolean virtualTime;
+	private final int timeUnits;
 	private volatile boolean active;
 	private volatile int timestamp;
-	private final List<Timer> timers;
+	private final TimingWheel timers;
+	private final boolean singleThreaded;
+	private final ArrayDeque<PumpkinEvent> ready; // Single-threaded only
+	private final List<TimingWheel.Timer> due;
+	private boolean checkpointed;
+	/**
+	 * Initialize a new Clock object. A virtual-time clock does not sleep
+	 * between ticks; it jumps from one pending timer to the next as soon as
+	 * the program has finished the events for the current instant.
+	 */
+	public Clock(Program program, boolean virtualTime){
+		this(program, virtualTime, false);
+	}
 	/**
-	 * Initialize a new Clock object
+	 * Initialize a new Clock object. A single-threaded clock runs in virtual
+	 * time and runs every event itself, in order of time and then of when
+	 * the event was raised, so a run with a seed is the same every time.
+	 * The program hands it events with enqueue().
 	 */
-	public Clock(Program program){
+	public Clock(Program program, boolean virtualTime, boolean singleThreaded){
 		this.program = program;
+		this.virtualTime = virtualTime || singleThreaded;
+		this.timeUnits = program.getConfig().getTimeUnits();
+		this.singleThreaded = singleThreaded;
 		this.active = true;
 		this.timestamp = 0;
-		this.timers = new LinkedList<Timer>();
+		this.timers = new TimingWheel();
+		this.ready = singleThreaded ? new ArrayDeque<PumpkinEvent>() : null;
+		this.due = singleThreaded ? new ArrayList<TimingWheel.Timer>() : null;
 	}
 	/**
-	 * Begin to increment counter, decrementing timers at each tick
+	 * Begin to increment counter, expiring due timers at each tick
 	 */
 	public void run(){
+		if (this.singleThreaded){
+			this.runSingle();
+			return;
+		}
+		if (this.virtualTime){
+			this.runVirtual();
+			return;
+		}
 		for (; this.active; this.increment()){
 			try {
 				Thread.sleep(this.SLEEP_DURATION);
 			} catch (InterruptedException ie){
 				ie.printStackTrace();
 			}
-			decrementTimers();
+			expireTimers();
 		}
 		//Undo last increment that occurs before Clock sees active == false
 		synchronized(this){
@@ -49,11 +85,46 @@ public class Clock implements Runnable {
 	public int getTimestamp(){
 		return this.timestamp;
 	}
+	/**
+	 * Get number of timers waiting to expire
+	 */
+	public int getPendingTimers(){
+		synchronized(this.timers){
+			return this.timers.size();
+		}
+	}
+	/**
+	 * Get every timer waiting to expire. Only meaningful while no events
+	 * are running.
+	 */
+	public List<TimingWheel.Timer> getTimers(){
+		synchronized(this.timers){
+			return this.timers.pending();
+		}
+	}
+	/**
+	 * Set the clock to a checkpoint's time, before any timers are restored
+	 */
+	public synchronized void restore(int timestamp){
+		this.timestamp = timestamp;
+		synchronized(this.timers){
+			this.timers.reset((long)timestamp + 1);
+		}
+	}
+	/**
+	 * Restore a checkpointed timer that expires at an absolute time
+	 */
+	public void restoreTimer(PumpkinEvent event, long deadline){
+		synchronized(this.timers){
+			this.timers.add(event, deadline);
+		}
+	}
 	/** 
-	 * Check if the timer has expired (timestamp exceeds Program.TIME_UNITS)
+	 * Check if the timer has expired (timestamp exceeds the configured
+	 * time units)
 	 */
 	public boolean expired(){
-		return this.timestamp >= Program.TIME_UNITS;
+		return this.timestamp >= this.timeUnits;
 	}
 	/**
 	 * Accepts an event and a duration, after which the clock will pass the
@@ -62,46 +133,139 @@ public class Clock implements Runnable {
 	public void setTimer(PumpkinEvent event, int duration){
 		if (duration <= 0)
 			this.program.processEvent(event);
+		else if (this.singleThreaded)
+			this.timers.add(event, (long)this.timestamp + duration);
 		else {
-			Timer t = new Timer(event, duration);
 			synchronized(this.timers){
-				this.timers.add(t);
+				this.timers.add(event, (long)this.timestamp + duration);
+			}
+		}
+	}
+	/**
+	 * Accepts a number of events, each with its own duration, and sets all
+	 * their timers under one hold of the timer lock
+	 */
+	public void setTimers(PumpkinEvent[] events, int[] durations, int count){
+		if (this.singleThreaded){
+			for (int i = 0; i < count; i++)
+				this.setTimer(events[i], durations[i]);
+			return;
+		}
+		synchronized(this.timers){
+			for (int i = 0; i < count; i++)
+				if (durations[i] > 0)
+					this.timers.add(events[i], (long)this.timestamp + durations[i]);
+		}
+		for (int i = 0; i < count; i++)
+			if (durations[i] <= 0)
+				this.program.processEvent(events[i]);
+	}
+	/**
+	 * Whether the clock runs every event itself
+	 */
+	public boolean isSingleThreaded(){
+		return this.singleThreaded;
+	}
+	/**
+	 * Queue an event raised at the current instant on a single-threaded
+	 * clock. It runs after the events already queued.
+	 */
+	public void enqueue(PumpkinEvent event){
+		this.ready.add(event);
+	}
+	// Run every event on this thread: those queued for the current instant
+	// in the order they were raised, then those of the next timers due, in
+	// the order their timers were set. Nothing else touches the queue or
+	// the wheel, so neither is locked.
+	private void runSingle(){
+		while (this.active){
+			PumpkinEvent event;
+			while (this.active && (event = this.ready.poll()) != null)
+				this.program.runEvent(event);
+			if (!this.active)
+				break;
+			long next = this.timers.nextExpiry();
+			if (next < 0){
+				this.program.stop();
+				break;
 			}
+			Config config = this.program.getConfig();
+			if (config.getCheckpoint() != null && !this.checkpointed &&
+					next > config.getCheckpointAt()){
+				this.checkpointed = true;
+				this.program.checkpoint();
+				break;
+			}
+			this.timestamp = (int)next;
+			TimingWheel.Timer expired = this.timers.advance(next);
+			for (TimingWheel.Timer t = expired; t != null; t = t.next)
+				this.due.add(t);
+			// Cascading may have filed a timer after later ones in its slot
+			if (this.due.size() > 1)
+				Collections.sort(this.due, Clock.BY_SEQUENCE);
+			for (int i = 0; i < this.due.size(); i++)
+				this.ready.add(this.due.get(i).getEvent());
+			this.due.clear();
+			this.timers.recycle(expired);
+		}
+	}
+	// Skip idle ticks: once every event for the current instant has
+	// finished, move straight to the next time a timer may be due
+	private void runVirtual(){
+		while (this.active){
+			this.program.awaitIdle();
+			if (!this.active || !this.tick())
+				break;
 		}
 	}
+	/**
+	 * Move a virtual-time clock to the next time a timer may be due and
+	 * hand the due timers' events to the program. Call only when no events
+	 * are running. Returns false, having stopped the program, if no timers
+	 * are left or a checkpoint has been written.
+	 */
+	public boolean tick(){
+		long next;
+		synchronized(this.timers){
+			next = this.timers.nextExpiry();
+		}
+		// Nothing running and nothing pending - no event can occur again
+		if (next < 0){
+			this.program.stop();
+			return false;
+		}
+		// Every event up to the checkpoint time has run and none is
+		// running, so the state is consistent
+		Config config = this.program.getConfig();
+		if (config.getCheckpoint() != null && !this.checkpointed &&
+				next > config.getCheckpointAt()){
+			this.checkpointed = true;
+			this.program.checkpoint();
+			return false;
+		}
+		synchronized(this){
+			this.timestamp = (int)next;
+		}
+		expireTimers();
+		return true;
+	}
 	// Get the meaning of life
 	private synchronized void increment(){
 		++this.timestamp;
 	}
-	// Iterates through registered timers and decrements them at each clock tick
-	private void decrementTimers(){
-		List<Timer> expired = new LinkedList<Timer>();
+	// Expires the timers that are due at the current tick. Ticks with nothing
+	// due do no per-timer work
+	private void expireTimers(){
+		TimingWheel.Timer expired;
 		synchronized(this.timers){
-			Iterator<Timer> i = this.timers.iterator();
-			while (i.hasNext()){
-				Timer t = i.next();
-				if (--t.duration == 0){
-					expired.add(t);
-					i.remove();
-				}
-			}
+			expired = this.timers.advance(this.timestamp);
 		}
 		//Sends events from expired timers to program to be executed
-		for (Timer t : expired){
+		for (TimingWheel.Timer t = expired; t != null; t = t.next){
 			this.program.processEvent(t.getEvent());
 		}
-	}
-	// Simple timer class which stores a runnable event and a countdown value 
-	class Timer {
-		private PumpkinEvent event;
-		private volatile int duration;
-		Timer(PumpkinEvent event, int duration){
-			this.event = event;
-			this.duration = duration;
-		}
-		PumpkinEvent getEvent(){
-			return this.event;
+		synchronized(this.timers){
+			this.timers.recycle(expired);
 		}
 	}
 }
-
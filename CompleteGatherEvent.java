@@ -2,18 +2,21 @@ package pumpkins;
 /**
  * The CompleteGatherEvent occurs when Jack completes the process of picking
  * pumpkins in the patch. It is preceded by a CompleteGatherEvent and a pause 
- * while Jack is picking pumpkins = number of pumpkins * Jack.PICK_TIME.
+ * while Jack is picking pumpkins = number of pumpkins * the pick time.
  */
 public class CompleteGatherEvent extends PumpkinEvent {
 	public final static String EVENT_DESCRIPTION = "Jack gathers pumpkins";
 	private final Jack jack;
-	private final Patch patch;
-	private final int quantity;
+	private final Jack.Worker worker;
+	private Patch patch;
+	private int quantity;
 	/**
 	 * Initialize an event
 	 */	
-	public CompleteGatherEvent(Jack jack, Patch patch, int quantity){
+	public CompleteGatherEvent(Jack jack, Jack.Worker worker, Patch patch,
+			int quantity){
 		this.jack = jack;
+		this.worker = worker;
 		this.patch = patch;
 		this.quantity = quantity;
 		this.silent = false;
@@ -21,8 +24,25 @@ public class CompleteGatherEvent extends PumpkinEvent {
 	/**
 	 * Execute event
 	 */
-	public void run(){
-		jack.completeGather(this.patch, this.quantity);
+	protected void perform(){
+		jack.completeGather(this.worker, this.patch, this.quantity);
+	}
+	// Reuse the event for another gather by the same worker
+	void reset(Patch patch, int quantity){
+		this.patch = patch;
+		this.quantity = quantity;
+	}
+	// Once counted and logged, the worker can reuse the event
+	protected void recycle(){
+		this.worker.recycle(this);
+	}
+	// The worker gathering, for checkpoints
+	Jack.Worker getWorker(){
+		return this.worker;
+	}
+	// Number of pumpkins being gathered, for checkpoints
+	int getQuantity(){
+		return this.quantity;
 	}
 	/**
 	 * Describes the event for external display
@@ -6,7 +6,7 @@ import pumpkins.Jack.*;
  * delivery.
  */
 public class CompleteOrderEvent extends PumpkinEvent {
-	private final static String EVENT_DESCRIPTION = "Order completed"; 
+	final static String EVENT_DESCRIPTION = "Order completed"; 
 	private final Jack jack;
 	private final Order order;
 	/**
@@ -20,9 +20,21 @@ public class CompleteOrderEvent extends PumpkinEvent {
 	/**
 	 * Execute event
 	 */
-	public void run(){
+	protected void perform(){
 		this.jack.completeOrder(this.order);
 	}
+	// Once counted and logged, the order can be reused
+	protected void recycle(){
+		this.jack.recycle(this.order);
+	}
+	// The order being delivered, for checkpoints
+	Order getOrder(){
+		return this.order;
+	}
+	// Time from order placement to completion, for the event journal
+	int getOrderDuration(){
+		return this.order == null ? EventJournal.NO_DETAIL : this.order.getDuration();
+	}
 
 	/** 
 	 * Describes the event for external display 
@@ -0,0 +1,688 @@
+package pumpkins;
+import java.io.*;
+/**
+ * The Config class holds the startup options for a Program. Options are
+ * given on the command line as --name=value, or --name for on/off flags.
+ */
+public class Config {
+	private boolean virtualTime;
+	private boolean deterministic;
+	private boolean console;
+	private boolean textLog;
+	private boolean journal;
+	private int logBuffer;
+	private boolean arrayPlants;
+	private int initialPlants;
+	private int patchShards;
+	private int workers;
+	private int poolSize;
+	private String executor;
+	private int orderInterval;
+	private int latencyWindow;
+	private int timeUnits;
+	private int stashMax;
+	private int refillLevel;
+	private int stashMin;
+	private int pickTime;
+	private int seedsPerPlant;
+	private int plantsToCompost;
+	private int ripenInterval;
+	private int trajectoryInterval;
+	private String samplesFile;
+	private boolean jmx;
+	private boolean logDropWhenFull;
+	private int logRollSize;
+	private int logRollInterval;
+	private File checkpoint;
+	private int checkpointAt;
+	private File restore;
+	private Long seed;
+	/**
+	 * Create a configuration with the default options
+	 */
+	public Config(){
+		this.virtualTime = false;
+		this.deterministic = false;
+		this.console = true;
+		this.textLog = true;
+		this.journal = false;
+		this.logBuffer = 65536;
+		this.arrayPlants = false;
+		this.initialPlants = 1000;
+		this.patchShards = 1;
+		this.workers = 1;
+		this.poolSize = 10;
+		this.executor = EventExecutors.FIXED;
+		this.orderInterval = 120;
+		this.latencyWindow = 100000;
+		this.timeUnits = 1000000;
+		this.stashMax = 10000;
+		this.refillLevel = 9000;
+		this.stashMin = 1000;
+		this.pickTime = 2;
+		this.seedsPerPlant = 4;
+		this.plantsToCompost = 5;
+		this.ripenInterval = 50000;
+		this.trajectoryInterval = 0;
+		this.samplesFile = null;
+		this.jmx = true;
+		this.logDropWhenFull = false;
+		this.logRollSize = 0;
+		this.logRollInterval = 0;
+		this.checkpoint = null;
+		this.checkpointAt = 0;
+		this.restore = null;
+		this.seed = null;
+	}
+	/**
+	 * Build a configuration from command line arguments. Throws
+	 * IllegalArgumentException for options it does not recognize.
+	 */
+	public static Config parse(String[] args){
+		Config config = new Config();
+		for (String arg : args){
+			if (!arg.startsWith("--"))
+				throw new IllegalArgumentException("Unexpected argument: " + arg);
+			int split = arg.indexOf('=');
+			String name = split < 0 ? arg.substring(2) : arg.substring(2, split);
+			String value = split < 0 ? "true" : arg.substring(split + 1);
+			config.set(name, value);
+		}
+		if (config.deterministic)
+			config.virtualTime = true;
+		if (config.checkpoint != null && !config.virtualTime)
+			throw new IllegalArgumentException("--checkpoint needs --virtual-time");
+		if (config.checkpoint != null && config.checkpointAt == 0)
+			throw new IllegalArgumentException("--checkpoint needs --checkpoint-at");
+		if (config.samplesFile != null && config.trajectoryInterval == 0)
+			throw new IllegalArgumentException("--samples-file needs --trajectory-interval");
+		if (config.stashMin > config.refillLevel || config.refillLevel > config.stashMax)
+			throw new IllegalArgumentException(
+					"Expected --stash-min <= --refill-level <= --stash-max");
+		return config;
+	}
+	/**
+	 * Set a single option by name
+	 */
+	public void set(String name, String value){
+		switch (name){
+			case "virtual-time":
+				this.virtualTime = Config.parseFlag(name, value);
+				break;
+			case "deterministic":
+				this.deterministic = Config.parseFlag(name, value);
+				break;
+			case "console":
+				this.console = Config.parseFlag(name, value);
+				break;
+			case "log-format":
+				if (value.equals("text") || value.equals("journal") ||
+						value.equals("both") || value.equals("none")){
+					this.textLog = value.equals("text") || value.equals("both");
+					this.journal = value.equals("journal") || value.equals("both");
+				} else
+					throw new IllegalArgumentException(
+							"Expected text, journal, both or none for --" + name + ": " +
+							value);
+				break;
+			case "log-buffer":
+				this.logBuffer = Config.parsePositive(name, value);
+				break;
+			case "log-when-full":
+				if (value.equals("block"))
+					this.logDropWhenFull = false;
+				else if (value.equals("drop"))
+					this.logDropWhenFull = true;
+				else
+					throw new IllegalArgumentException(
+							"Expected block or drop for --" + name + ": " + value);
+				break;
+			case "log-roll-size":
+				this.logRollSize = Config.parsePositive(name, value);
+				break;
+			case "log-roll-interval":
+				this.logRollInterval = Config.parsePositive(name, value);
+				break;
+			case "plant-store":
+				if (value.equals("object") || value.equals("array"))
+					this.arrayPlants = value.equals("array");
+				else
+					throw new IllegalArgumentException(
+							"Expected object or array for --" + name + ": " + value);
+				break;
+			case "initial-plants":
+				this.initialPlants = Config.parsePositive(name, value);
+				break;
+			case "patch-shards":
+				this.patchShards = Config.parsePositive(name, value);
+				break;
+			case "workers":
+				this.workers = Config.parsePositive(name, value);
+				break;
+			case "pool-size":
+				this.poolSize = Config.parsePositive(name, value);
+				break;
+			case "executor":
+				if (value.equals(EventExecutors.VIRTUAL) &&
+						!EventExecutors.hasVirtualThreads())
+					throw new IllegalArgumentException(
+							"--executor=virtual needs Java 21 or later");
+				if (!EventExecutors.available().contains(value))
+					throw new IllegalArgumentException("Expected fixed, fork-join, " +
+							"virtual or caller-runs for --" + name + ": " + value);
+				this.executor = value;
+				break;
+			case "order-interval":
+				this.orderInterval = Config.parsePositive(name, value);
+				break;
+			case "jmx":
+				this.jmx = Config.parseFlag(name, value);
+				break;
+			case "time-units":
+				this.timeUnits = Config.parsePositive(name, value);
+				break;
+			case "stash-max":
+				this.stashMax = Config.parsePositive(name, value);
+				break;
+			case "refill-level":
+				this.refillLevel = Config.parsePositive(name, value);
+				break;
+			case "stash-min":
+				this.stashMin = Config.parsePositive(name, value);
+				break;
+			case "pick-time":
+				this.pickTime = Config.parsePositive(name, value);
+				break;
+			case "seeds-per-plant":
+				this.seedsPerPlant = Config.parsePositive(name, value);
+				break;
+			case "plants-to-compost":
+				this.plantsToCompost = Config.parsePositive(name, value);
+				break;
+			case "ripen-interval":
+				this.ripenInterval = Config.parsePositive(name, value);
+				break;
+			case "trajectory-interval":
+				this.trajectoryInterval = Config.parsePositive(name, value);
+				break;
+			case "samples-file":
+				this.samplesFile = value;
+				break;
+			case "latency-window":
+				this.latencyWindow = Config.parsePositive(name, value);
+				break;
+			case "checkpoint":
+				this.checkpoint = new File(value);
+				break;
+			case "checkpoint-at":
+				this.checkpointAt = Config.parsePositive(name, value);
+				break;
+			case "restore":
+				this.restore = new File(value);
+				break;
+			case "seed":
+				try {
+					this.seed = Long.parseLong(value);
+				} catch (NumberFormatException nfe){
+					throw new IllegalArgumentException("Expected a number for --" +
+							name + ": " + value);
+				}
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown option: --" + name);
+		}
+	}
+	/**
+	 * Whether the clock skips idle time instead of ticking in real time
+	 */
+	public boolean isVirtualTime(){
+		return this.virtualTime;
+	}
+	/**
+	 * Choose between a real-time and a virtual-time clock
+	 */
+	public Config setVirtualTime(boolean virtualTime){
+		this.virtualTime = virtualTime;
+		return this;
+	}
+	/**
+	 * Whether every event runs on one thread, in order of time and then of
+	 * when it was raised. Implies virtual time.
+	 */
+	public boolean isDeterministic(){
+		return this.deterministic;
+	}
+	/**
+	 * Choose between the single-threaded engine and the thread pool
+	 */
+	public Config setDeterministic(boolean deterministic){
+		this.deterministic = deterministic;
+		return this;
+	}
+	/**
+	 * Whether log lines are echoed to the console
+	 */
+	public boolean isConsole(){
+		return this.console;
+	}
+	/**
+	 * Turn console echo of log lines on or off
+	 */
+	public Config setConsole(boolean console){
+		this.console = console;
+		return this;
+	}
+	/**
+	 * Whether the log file is written as text
+	 */
+	public boolean isTextLog(){
+		return this.textLog;
+	}
+	/**
+	 * Turn the text log file on or off
+	 */
+	public Config setTextLog(boolean textLog){
+		this.textLog = textLog;
+		return this;
+	}
+	/**
+	 * Whether events are written to a binary journal next to the log file
+	 */
+	public boolean isJournal(){
+		return this.journal;
+	}
+	/**
+	 * Turn the binary event journal on or off
+	 */
+	public Config setJournal(boolean journal){
+		this.journal = journal;
+		return this;
+	}
+	/**
+	 * Get number of log records that can wait for the log writer thread
+	 */
+	public int getLogBuffer(){
+		return this.logBuffer;
+	}
+	/**
+	 * Set number of log records that can wait for the log writer thread
+	 */
+	public Config setLogBuffer(int logBuffer){
+		this.logBuffer = logBuffer;
+		return this;
+	}
+	/**
+	 * Whether log records are dropped, rather than waited on, when the
+	 * log writer falls behind
+	 */
+	public boolean isLogDropWhenFull(){
+		return this.logDropWhenFull;
+	}
+	/**
+	 * Choose between dropping and waiting when the log buffer is full
+	 */
+	public Config setLogDropWhenFull(boolean logDropWhenFull){
+		this.logDropWhenFull = logDropWhenFull;
+		return this;
+	}
+	/**
+	 * Get size in megabytes at which the text log starts a new segment, or
+	 * 0 if it does not roll by size
+	 */
+	public int getLogRollSize(){
+		return this.logRollSize;
+	}
+	/**
+	 * Set size in megabytes at which the text log starts a new segment (0
+	 * for no limit)
+	 */
+	public Config setLogRollSize(int logRollSize){
+		this.logRollSize = logRollSize;
+		return this;
+	}
+	/**
+	 * Get number of time units after which the text log starts a new
+	 * segment, or 0 if it does not roll by time
+	 */
+	public int getLogRollInterval(){
+		return this.logRollInterval;
+	}
+	/**
+	 * Set number of time units after which the text log starts a new
+	 * segment (0 for no limit)
+	 */
+	public Config setLogRollInterval(int logRollInterval){
+		this.logRollInterval = logRollInterval;
+		return this;
+	}
+	/**
+	 * Whether the text log is written as rolling, compressed segments
+	 */
+	public boolean isLogRolling(){
+		return this.logRollSize > 0 || this.logRollInterval > 0;
+	}
+	/**
+	 * Whether the patch keeps plants as ids in primitive arrays rather than
+	 * as objects
+	 */
+	public boolean isArrayPlants(){
+		return this.arrayPlants;
+	}
+	/**
+	 * Choose between object and primitive array plant storage
+	 */
+	public Config setArrayPlants(boolean arrayPlants){
+		this.arrayPlants = arrayPlants;
+		return this;
+	}
+	/**
+	 * Get number of plants in the patch at the start of the program
+	 */
+	public int getInitialPlants(){
+		return this.initialPlants;
+	}
+	/**
+	 * Set number of plants in the patch at the start of the program
+	 */
+	public Config setInitialPlants(int initialPlants){
+		this.initialPlants = initialPlants;
+		return this;
+	}
+	/**
+	 * Get number of independently locked shards the patch is split into
+	 */
+	public int getPatchShards(){
+		return this.patchShards;
+	}
+	/**
+	 * Set number of independently locked shards the patch is split into
+	 */
+	public Config setPatchShards(int patchShards){
+		this.patchShards = patchShards;
+		return this;
+	}
+	/**
+	 * Get number of workers in Jack's crew
+	 */
+	public int getWorkers(){
+		return this.workers;
+	}
+	/**
+	 * Set number of workers in Jack's crew
+	 */
+	public Config setWorkers(int workers){
+		this.workers = workers;
+		return this;
+	}
+	/**
+	 * Get number of threads in the pool that runs events
+	 */
+	public int getPoolSize(){
+		return this.poolSize;
+	}
+	/**
+	 * Set number of threads in the pool that runs events
+	 */
+	public Config setPoolSize(int poolSize){
+		this.poolSize = poolSize;
+		return this;
+	}
+	/**
+	 * Get the name of the executor that runs events: fixed, fork-join,
+	 * virtual or caller-runs
+	 */
+	public String getExecutor(){
+		return this.executor;
+	}
+	/**
+	 * Choose the executor that runs events
+	 */
+	public Config setExecutor(String executor){
+		this.executor = executor;
+		return this;
+	}
+	/**
+	 * Get mean time between customer orders
+	 */
+	public int getOrderInterval(){
+		return this.orderInterval;
+	}
+	/**
+	 * Set mean time between customer orders
+	 */
+	public Config setOrderInterval(int orderInterval){
+		this.orderInterval = orderInterval;
+		return this;
+	}
+	/**
+	 * Get time after which no more orders are placed and the program stops
+	 * once every open order is delivered
+	 */
+	public int getTimeUnits(){
+		return this.timeUnits;
+	}
+	/**
+	 * Set time after which no more orders are placed
+	 */
+	public Config setTimeUnits(int timeUnits){
+		this.timeUnits = timeUnits;
+		return this;
+	}
+	/**
+	 * Get most pumpkins Jack's stash holds
+	 */
+	public int getStashMax(){
+		return this.stashMax;
+	}
+	/**
+	 * Set most pumpkins Jack's stash holds
+	 */
+	public Config setStashMax(int stashMax){
+		this.stashMax = stashMax;
+		return this;
+	}
+	/**
+	 * Get stash level at which Jack starts gathering again after it was full
+	 */
+	public int getRefillLevel(){
+		return this.refillLevel;
+	}
+	/**
+	 * Set stash level at which Jack starts gathering again after it was full
+	 */
+	public Config setRefillLevel(int refillLevel){
+		this.refillLevel = refillLevel;
+		return this;
+	}
+	/**
+	 * Get stash level at which Jack plants more pumpkins
+	 */
+	public int getStashMin(){
+		return this.stashMin;
+	}
+	/**
+	 * Set stash level at which Jack plants more pumpkins
+	 */
+	public Config setStashMin(int stashMin){
+		this.stashMin = stashMin;
+		return this;
+	}
+	/**
+	 * Get time a worker takes to pick each pumpkin
+	 */
+	public int getPickTime(){
+		return this.pickTime;
+	}
+	/**
+	 * Set time a worker takes to pick each pumpkin
+	 */
+	public Config setPickTime(int pickTime){
+		this.pickTime = pickTime;
+		return this;
+	}
+	/**
+	 * Get number of plants Jack grows from each pumpkin he sows
+	 */
+	public int getSeedsPerPlant(){
+		return this.seedsPerPlant;
+	}
+	/**
+	 * Set number of plants Jack grows from each pumpkin he sows
+	 */
+	public Config setSeedsPerPlant(int seedsPerPlant){
+		this.seedsPerPlant = seedsPerPlant;
+		return this;
+	}
+	/**
+	 * Get number of plants composted when the stash becomes full
+	 */
+	public int getPlantsToCompost(){
+		return this.plantsToCompost;
+	}
+	/**
+	 * Set number of plants composted when the stash becomes full
+	 */
+	public Config setPlantsToCompost(int plantsToCompost){
+		this.plantsToCompost = plantsToCompost;
+		return this;
+	}
+	/**
+	 * Get mean time for a plant to ripen
+	 */
+	public int getRipenInterval(){
+		return this.ripenInterval;
+	}
+	/**
+	 * Set mean time for a plant to ripen
+	 */
+	public Config setRipenInterval(int ripenInterval){
+		this.ripenInterval = ripenInterval;
+		return this;
+	}
+	/**
+	 * Get time between samples of the stash and field, or 0 for none
+	 */
+	public int getTrajectoryInterval(){
+		return this.trajectoryInterval;
+	}
+	/**
+	 * Sample the stash and field at intervals while orders come in, or
+	 * not at all if the interval is 0
+	 */
+	public Config setTrajectoryInterval(int trajectoryInterval){
+		this.trajectoryInterval = trajectoryInterval;
+		return this;
+	}
+	/**
+	 * Get the name the samples are written under, or null to keep them
+	 * only in memory
+	 */
+	public String getSamplesFile(){
+		return this.samplesFile;
+	}
+	/**
+	 * Write the samples to name.csv and name.cols when the program shuts
+	 * down
+	 */
+	public Config setSamplesFile(String samplesFile){
+		this.samplesFile = samplesFile;
+		return this;
+	}
+	/**
+	 * Get time between reports of order completion times
+	 */
+	public int getLatencyWindow(){
+		return this.latencyWindow;
+	}
+	/**
+	 * Set time between reports of order completion times
+	 */
+	public Config setLatencyWindow(int latencyWindow){
+		this.latencyWindow = latencyWindow;
+		return this;
+	}
+	/**
+	 * Whether the program publishes its statistics as a JMX MBean
+	 */
+	public boolean isJmx(){
+		return this.jmx;
+	}
+	/**
+	 * Turn the JMX MBean on or off
+	 */
+	public Config setJmx(boolean jmx){
+		this.jmx = jmx;
+		return this;
+	}
+	/**
+	 * Get the file a checkpoint is written to, or null for no checkpoint
+	 */
+	public File getCheckpoint(){
+		return this.checkpoint;
+	}
+	/**
+	 * Get the time at which the checkpoint is taken
+	 */
+	public int getCheckpointAt(){
+		return this.checkpointAt;
+	}
+	/**
+	 * Write a checkpoint to a file once every event up to the given time
+	 * has run, then stop. Needs a virtual-time clock.
+	 */
+	public Config setCheckpoint(File checkpoint, int checkpointAt){
+		this.checkpoint = checkpoint;
+		this.checkpointAt = checkpointAt;
+		return this;
+	}
+	/**
+	 * Get the checkpoint the program starts from, or null to start afresh
+	 */
+	public File getRestore(){
+		return this.restore;
+	}
+	/**
+	 * Start the program from a checkpoint rather than a new patch
+	 */
+	public Config setRestore(File restore){
+		this.restore = restore;
+		return this;
+	}
+	/**
+	 * Get the seed for random numbers, or null for an unseeded generator
+	 */
+	public Long getSeed(){
+		return this.seed;
+	}
+	/**
+	 * Seed the random numbers. A restored program with a seed forks from
+	 * the checkpoint instead of replaying its random numbers.
+	 */
+	public Config setSeed(Long seed){
+		this.seed = seed;
+		return this;
+	}
+	// Read an on/off option value
+	private static boolean parseFlag(String name, String value){
+		if (value.equals("true"))
+			return true;
+		if (value.equals("false"))
+			return false;
+		throw new IllegalArgumentException("Expected true or false for --" +
+				name + ": " + value);
+	}
+	// Read an option value that must be a positive whole number
+	private static int parsePositive(String name, String value){
+		int n;
+		try {
+			n = Integer.parseInt(value);
+		} catch (NumberFormatException nfe){
+			throw new IllegalArgumentException("Expected a number for --" +
+					name + ": " + value);
+		}
+		if (n <= 0)
+			throw new IllegalArgumentException("Expected a positive number for --" +
+					name + ": " + value);
+		return n;
+	}
+}
@@ -0,0 +1,43 @@
+package pumpkins;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+/**
+ * The EventCounter counts the events a program runs by kind of event. The
+ * counter for each event class is found through a ClassValue, so counting
+ * an event takes no lock and no map lookup.
+ */
+public class EventCounter {
+	private final ConcurrentMap<String, LongAdder> counts;
+	private final ClassValue<LongAdder> counters;
+	/**
+	 * Create a counter with no events counted
+	 */
+	public EventCounter(){
+		this.counts = new ConcurrentSkipListMap<String, LongAdder>();
+		this.counters = new ClassValue<LongAdder>(){
+			protected LongAdder computeValue(Class<?> type){
+				String name = type.getSimpleName().isEmpty() ?
+						type.getName() : type.getSimpleName();
+				LongAdder counter = new LongAdder();
+				LongAdder existing = EventCounter.this.counts.putIfAbsent(name, counter);
+				return existing != null ? existing : counter;
+			}
+		};
+	}
+	/**
+	 * Count one event
+	 */
+	public void count(PumpkinEvent event){
+		this.counters.get(event.getClass()).increment();
+	}
+	/**
+	 * Get the number of events counted for each event class name
+	 */
+	public Map<String, Long> getCounts(){
+		Map<String, Long> counts = new TreeMap<String, Long>();
+		for (Map.Entry<String, LongAdder> e : this.counts.entrySet())
+			counts.put(e.getKey(), e.getValue().sum());
+		return counts;
+	}
+}
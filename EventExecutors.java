@@ -0,0 +1,127 @@
+package pumpkins;
+import java.lang.reflect.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+/**
+ * The EventExecutors class creates the executor a Program runs its events
+ * on, chosen with --executor:
+ *
+ * fixed - a fixed pool of --pool-size threads sharing one queue (default)
+ * fork-join - a work-stealing ForkJoinPool of --pool-size threads, where an
+ *   event raised on a pool thread is queued on that thread first
+ * virtual - a new virtual thread for every event (Java 21 or later)
+ * caller-runs - no threads of its own; an event runs on the thread that
+ *   raises it, straight away
+ *
+ * Pool threads are named with the program's thread prefix so the monitor
+ * can find them.
+ */
+public class EventExecutors {
+	public final static String FIXED = "fixed";
+	public final static String FORK_JOIN = "fork-join";
+	public final static String VIRTUAL = "virtual";
+	public final static String CALLER_RUNS = "caller-runs";
+	private EventExecutors(){
+	}
+	/**
+	 * Get the names of the executors this JVM can run
+	 */
+	public static List<String> available(){
+		List<String> names = new ArrayList<String>();
+		names.add(EventExecutors.FIXED);
+		names.add(EventExecutors.FORK_JOIN);
+		if (EventExecutors.hasVirtualThreads())
+			names.add(EventExecutors.VIRTUAL);
+		names.add(EventExecutors.CALLER_RUNS);
+		return names;
+	}
+	/**
+	 * Create the executor chosen in the configuration
+	 */
+	public static ExecutorService create(Config config, String threadPrefix){
+		String name = config.getExecutor();
+		switch (name){
+			case EventExecutors.FIXED:
+				return Executors.newFixedThreadPool(config.getPoolSize(),
+						new ThreadFactory(){
+							private final AtomicInteger threads = new AtomicInteger();
+							public Thread newThread(Runnable r){
+								return new Thread(r, threadPrefix + threads.incrementAndGet());
+							}
+						});
+			case EventExecutors.FORK_JOIN:
+				return new ForkJoinPool(config.getPoolSize(),
+						new ForkJoinPool.ForkJoinWorkerThreadFactory(){
+							private final AtomicInteger threads = new AtomicInteger();
+							public ForkJoinWorkerThread newThread(ForkJoinPool pool){
+								ForkJoinWorkerThread t = ForkJoinPool
+										.defaultForkJoinWorkerThreadFactory.newThread(pool);
+								t.setName(threadPrefix + threads.incrementAndGet());
+								return t;
+							}
+						}, null, true); // FIFO, so events raised together run in order
+			case EventExecutors.VIRTUAL:
+				return EventExecutors.virtualThreads(threadPrefix);
+			case EventExecutors.CALLER_RUNS:
+				return new CallerRunsExecutor();
+			default:
+				throw new IllegalArgumentException("Unknown executor: " + name);
+		}
+	}
+	// Whether this JVM has virtual threads
+	static boolean hasVirtualThreads(){
+		try {
+			Thread.class.getMethod("ofVirtual");
+			return true;
+		} catch (NoSuchMethodException nsme){
+			return false;
+		}
+	}
+	// A thread-per-task executor of named virtual threads. The program is
+	// built for Java 17, so the Java 21 API is reached by reflection.
+	private static ExecutorService virtualThreads(String threadPrefix){
+		try {
+			Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			builder = builderType.getMethod("name", String.class, long.class)
+					.invoke(builder, threadPrefix, 1L);
+			ThreadFactory factory = (ThreadFactory)builderType
+					.getMethod("factory").invoke(builder);
+			return (ExecutorService)Executors.class
+					.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+					.invoke(null, factory);
+		} catch (ReflectiveOperationException roe){
+			throw new IllegalArgumentException(
+					"Virtual threads need Java 21 or later", roe);
+		}
+	}
+	/**
+	 * The CallerRunsExecutor runs each task on the thread that submits it,
+	 * before execute() returns
+	 */
+	static class CallerRunsExecutor extends AbstractExecutorService {
+		private volatile boolean shutdown;
+		public void execute(Runnable task){
+			if (this.shutdown)
+				throw new RejectedExecutionException("Executor has been shut down");
+			task.run();
+		}
+		public void shutdown(){
+			this.shutdown = true;
+		}
+		public List<Runnable> shutdownNow(){
+			this.shutdown = true;
+			return new ArrayList<Runnable>();
+		}
+		public boolean isShutdown(){
+			return this.shutdown;
+		}
+		public boolean isTerminated(){
+			return this.shutdown;
+		}
+		public boolean awaitTermination(long timeout, TimeUnit unit){
+			return this.shutdown;
+		}
+	}
+}
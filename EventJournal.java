@@ -0,0 +1,189 @@
+package pumpkins;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+/**
+ * The EventJournal class writes the event log in a compact binary form.
+ * Each event is a fixed-width record of type id, timestamp, stash count,
+ * field count and a type-specific detail (the order duration for completed
+ * orders, the number of plants in a ripening batch). Records are written
+ * through a memory-mapped window of the file. Every INDEX_INTERVAL records
+ * form a block whose lowest and highest timestamps are kept in a sparse
+ * index, so a reader can go straight to the blocks that cover a time
+ * range. The index and the text of any free-form messages are written
+ * after the records when the journal is closed. Use JournalReader to read
+ * a journal or convert it back to text.
+ */
+public class EventJournal {
+	final static int MAGIC = 0x504b4a31; // "PKJ1"
+	final static int VERSION = 1;
+	final static int HEADER_SIZE = 4096;
+	final static int RECORD_SIZE = 20;
+	final static int INDEX_INTERVAL = 4096;
+	final static int NO_DETAIL = -1;
+	// Record type of a free-form message. Its detail is the message number.
+	final static int MESSAGE = 0;
+	// Log descriptions of the event types, indexed by record type id
+	final static String[] DESCRIPTIONS = {
+		null,
+		NewPlantEvent.EVENT_DESCRIPTION,
+		RipenEvent.EVENT_DESCRIPTION,
+		OrderEvent.EVENT_DESCRIPTION,
+		CompleteGatherEvent.EVENT_DESCRIPTION,
+		CompleteOrderEvent.EVENT_DESCRIPTION,
+		RipenBatchEvent.EVENT_DESCRIPTION,
+		NewPlantsEvent.EVENT_DESCRIPTION
+	};
+	private final static long WINDOW_SIZE = EventJournal.RECORD_SIZE * (1L << 20);
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final List<String> messages;
+	private MappedByteBuffer window;
+	private long windowStart;
+	private long count;
+	private int[] blockMin;
+	private int[] blockMax;
+	/**
+	 * Create a new journal file, replacing any existing file
+	 */
+	public EventJournal(File file) throws IOException {
+		this.file = new RandomAccessFile(file, "rw");
+		this.file.setLength(0);
+		this.channel = this.file.getChannel();
+		this.messages = new ArrayList<String>();
+		this.window = null;
+		this.windowStart = EventJournal.HEADER_SIZE;
+		this.count = 0;
+		this.blockMin = new int[64];
+		this.blockMax = new int[64];
+	}
+	/**
+	 * Get the record type id for an event
+	 */
+	static int typeOf(PumpkinEvent event){
+		if (event instanceof NewPlantEvent)
+			return 1;
+		if (event instanceof RipenEvent)
+			return 2;
+		if (event instanceof OrderEvent)
+			return 3;
+		if (event instanceof CompleteGatherEvent)
+			return 4;
+		if (event instanceof CompleteOrderEvent)
+			return 5;
+		if (event instanceof RipenBatchEvent || event instanceof RipenPlantsEvent)
+			return 6;
+		if (event instanceof NewPlantsEvent)
+			return 7;
+		throw new IllegalArgumentException("No journal type for " +
+				event.getClass().getName());
+	}
+	/**
+	 * Get the detail value recorded for an event
+	 */
+	static int detailOf(PumpkinEvent event){
+		if (event instanceof CompleteOrderEvent)
+			return ((CompleteOrderEvent)event).getOrderDuration();
+		if (event instanceof RipenBatchEvent)
+			return ((RipenBatchEvent)event).size;
+		if (event instanceof RipenPlantsEvent)
+			return ((RipenPlantsEvent)event).size;
+		if (event instanceof NewPlantsEvent)
+			return ((NewPlantsEvent)event).getCount();
+		return EventJournal.NO_DETAIL;
+	}
+	/**
+	 * Append an event record
+	 */
+	public void write(int type, int timestamp, int stash, int field, int detail)
+			throws IOException {
+		if (this.window == null || !this.window.hasRemaining())
+			this.nextWindow();
+		this.window.putInt(type);
+		this.window.putInt(timestamp);
+		this.window.putInt(stash);
+		this.window.putInt(field);
+		this.window.putInt(detail);
+
+		// Widen the time range of the record's index block
+		int block = (int)(this.count / EventJournal.INDEX_INTERVAL);
+		if (block == this.blockMin.length){
+			this.blockMin = Arrays.copyOf(this.blockMin, block * 2);
+			this.blockMax = Arrays.copyOf(this.blockMax, block * 2);
+		}
+		if (this.count % EventJournal.INDEX_INTERVAL == 0){
+			this.blockMin[block] = timestamp;
+			this.blockMax[block] = timestamp;
+		} else if (timestamp < this.blockMin[block]){
+			this.blockMin[block] = timestamp;
+		} else if (timestamp > this.blockMax[block]){
+			this.blockMax[block] = timestamp;
+		}
+		++this.count;
+	}
+	/**
+	 * Append a free-form message record
+	 */
+	public void writeMessage(int timestamp, String message, int stash, int field)
+			throws IOException {
+		this.messages.add(message);
+		this.write(EventJournal.MESSAGE, timestamp, stash, field,
+				this.messages.size() - 1);
+	}
+	/**
+	 * Write the index, messages and header, and close the file
+	 */
+	public void close() throws IOException {
+		if (this.window != null)
+			this.window.force();
+		long trailerOffset = EventJournal.HEADER_SIZE +
+				this.count * EventJournal.RECORD_SIZE;
+		int blocks = (int)((this.count + EventJournal.INDEX_INTERVAL - 1) /
+				EventJournal.INDEX_INTERVAL);
+
+		// Trailer: block time ranges followed by message text
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream trailer = new DataOutputStream(bytes);
+		for (int i = 0; i < blocks; i++){
+			trailer.writeInt(this.blockMin[i]);
+			trailer.writeInt(this.blockMax[i]);
+		}
+		trailer.writeInt(this.messages.size());
+		for (String message : this.messages)
+			trailer.writeUTF(message);
+		this.writeFully(ByteBuffer.wrap(bytes.toByteArray()), trailerOffset);
+		this.channel.truncate(trailerOffset + bytes.size());
+
+		// Header: format, counts and the descriptions of the record types
+		bytes.reset();
+		DataOutputStream header = new DataOutputStream(bytes);
+		header.writeInt(EventJournal.MAGIC);
+		header.writeInt(EventJournal.VERSION);
+		header.writeInt(EventJournal.RECORD_SIZE);
+		header.writeInt(EventJournal.INDEX_INTERVAL);
+		header.writeLong(this.count);
+		header.writeLong(trailerOffset);
+		header.writeInt(EventJournal.DESCRIPTIONS.length);
+		for (int i = 1; i < EventJournal.DESCRIPTIONS.length; i++)
+			header.writeUTF(EventJournal.DESCRIPTIONS[i]);
+		this.writeFully(ByteBuffer.wrap(bytes.toByteArray()), 0);
+
+		this.channel.force(true);
+		this.file.close();
+	}
+	// Map the next window of the file for writing, growing the file
+	private void nextWindow() throws IOException {
+		if (this.window != null){
+			this.window.force();
+			this.windowStart += EventJournal.WINDOW_SIZE;
+		}
+		this.window = this.channel.map(FileChannel.MapMode.READ_WRITE,
+				this.windowStart, EventJournal.WINDOW_SIZE);
+	}
+	// Write a whole buffer at a file position
+	private void writeFully(ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining())
+			position += this.channel.write(buffer, position);
+	}
+}
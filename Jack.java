@@ -1,28 +1,40 @@
 package pumpkins;
+import java.io.*;
 import java.util.*;
 /**
  * Jack is a complicated fellow in the Pumpkin program. He receives notice from
  * ripening pumpkins, upon which he gathers all available. He also receives
  * orders, upon which he brings all outstanding orders to be shipped off.
- * Both activites take time, and cannot be performed concurrently.
+ * Both activites take time. Jack runs a crew of one or more workers who
+ * share his stash and his order backlog. Each worker performs one activity
+ * at a time, and only one worker gathers at a time. Work that turns up
+ * while a worker is busy is flagged, and an idle worker takes flagged work
+ * straight away rather than leaving it for the busy one. In a
+ * single-threaded (--deterministic) program his locks are skipped.
  */
 public class Jack {
 	private final static int MEAN_SHIP_INTERVAL = 60;
 	private final static int MEAN_SHIP_DEVIATION = 20;
-	private final static int PICK_TIME = 2;
-	private final static int STASH_MAX = 10000;
-	private final static int REFILL_LEVEL = 9000;
-	private final static int STASH_MIN = 1000;
 	private final Program program;
-	private final Random random;
+	private final int pickTime;
+	private final int stashMax;
+	private final int refillLevel;
+	private final int stashMin;
+	private final int seedsPerPlant;
+	private final RandomStream random;
 	private Patch patch;
-	private final List<Order> openOrders;
-	private final List<Order> completedOrders;
+	private NewPlantsEvent sowing; // Plants a pumpkin's seeds in the patch
+	private final OrderQueue openOrders;
+	private final ArrayDeque<Order> spareOrders; // Completed, for reuse
+	private final LatencyRecorder latency;
+	private final Worker[] crew;
+	private final Deque<Worker> idleWorkers;
+	private final boolean singleThreaded; // Locks are skipped if set
 	private volatile int stashCount;
 	private volatile int inTransit;
 	private volatile boolean stashFull;
 	private volatile boolean stashLow;
-	private volatile boolean active;
+	private volatile boolean gathering;
 	private volatile boolean shipFlag;
 	private volatile boolean gatherFlag;
 	/**
@@ -30,14 +42,28 @@ public class Jack {
 	 */
 	public Jack(Program program){
 		this.program = program;
-		this.random = new Random();
-		this.openOrders = new ArrayList<Order>();
-		this.completedOrders = new ArrayList<Order>();
+		Config config = program.getConfig();
+		this.pickTime = config.getPickTime();
+		this.stashMax = config.getStashMax();
+		this.refillLevel = config.getRefillLevel();
+		this.stashMin = config.getStashMin();
+		this.seedsPerPlant = config.getSeedsPerPlant();
+		this.random = program.newRandomStream();
+		this.singleThreaded = program.isSingleThreaded();
+		this.openOrders = new OrderQueue(this);
+		this.spareOrders = new ArrayDeque<Order>();
+		this.latency = new LatencyRecorder();
+		this.crew = new Worker[config.getWorkers()];
+		this.idleWorkers = new ArrayDeque<Worker>();
+		for (int i = 0; i < this.crew.length; i++){
+			this.crew[i] = new Worker(i + 1);
+			this.idleWorkers.add(this.crew[i]);
+		}
 		this.stashCount = 0;
 		this.inTransit = 0;
 		this.stashFull = false;
 		this.stashLow = false;
-		this.active = false;
+		this.gathering = false;
 		this.shipFlag = false;
 		this.gatherFlag = false;
 	}
@@ -46,26 +72,22 @@ public class Jack {
 	 */
 	public void setPatch(Patch patch){
 		this.patch = patch;
+		this.sowing = new NewPlantsEvent(patch, this.seedsPerPlant);
 	}
 	/**
-	 * Receive a single order and track it. If Jack is busy, tell him to
-	 * ship when he can. Otherwise he's now busy and goes off to ship the
-	 * order (if his stash is not empty)
+	 * Receive a single order and track it. If the crew is busy, tell them to
+	 * ship when they can. Otherwise an idle worker goes off to ship the
+	 * order (if the stash is not empty)
 	 */	
 	public void receiveOrder(){
-		Order o = new Order();
-		synchronized(this.openOrders){
-			openOrders.add(o);
-		}
-		synchronized(this){
-			if (this.active){
-				this.shipFlag = true;
-			} else { 
-				this.active = true;
-				PumpkinEvent event = new ShipEvent(this);
-				this.program.processEvent(event);
+		this.openOrders.add(this.newOrder(this.program.getTimestamp()));
+		if (this.singleThreaded)
+			this.callShipment();
+		else {
+			synchronized(this){
+				this.callShipment();
 			}
-		}	
+		}
 	}
 	/**
 	 * Get the number of pumpkins in Jack's stash
@@ -73,36 +95,59 @@ public class Jack {
 	public int getStashCount(){
 		return this.stashCount;
 	}
+	// Get number of orders waiting to be shipped
+	int getOpenOrderCount(){
+		return this.openOrders.size();
+	}
+	// Get number of orders shipped but not yet delivered
+	int getInTransitCount(){
+		return this.inTransit;
+	}
+	// Get number of workers in the crew
+	int getWorkerCount(){
+		return this.crew.length;
+	}
+	// Get number of workers resting
+	synchronized int getIdleWorkerCount(){
+		return this.idleWorkers.size();
+	}
 	/**
-	 * Send Jack to the patch to pick pumpkins. After a duration of 
-	 * Jack.PICK_TIME * (# available pumpkins), they will be added to his 
+	 * Send a worker to the patch to pick pumpkins. After a duration of
+	 * the pick time * (# available pumpkins), they will be added to the
 	 * stash in a CompleteGatherEvent
 	 */
-	public void gather(Patch patch){
+	public void gather(Worker worker, Patch patch){
 		int quantity = patch.getPumpkinCount();	
 		this.gatherFlag = false;
-		if (quantity == 0)
+		if (quantity == 0){
+			if (this.singleThreaded)
+				this.endGather(worker);
+			else {
+				synchronized(this){
+					this.endGather(worker);
+				}
+			}
 			return;
+		}
 
-		PumpkinEvent event = new CompleteGatherEvent(this, patch, quantity);
-		this.program.setTimer(event, quantity * Jack.PICK_TIME); 
+		PumpkinEvent event = worker.completeGatherEvent(patch, quantity);
+		this.program.setTimer(event, quantity * this.pickTime); 
 	}
 	/**
-	 * Jack picks as many pumpkins at the patch as he can fit in his stash.
-	 * If it becomes full, he stops gathering for awhile. If his stash gets
+	 * The worker picks as many pumpkins at the patch as fit in the stash.
+	 * If it becomes full, Jack stops gathering for awhile. If the stash gets
 	 * too low, he takes a ripe pumpkin from the patch and plants more 
-	 * pumpkins. Once complete, he checks his messages to see if he needs to
-	 * deliver any orders or go back to the patch for more pumpkins. If not,
-	 * he rests.
+	 * pumpkins. Once complete, the worker checks for orders to deliver or
+	 * more pumpkins to gather. If not, he rests.
 	 */
-	protected void completeGather(Patch patch, int quantity){
+	protected void completeGather(Worker worker, Patch patch, int quantity){
 
 		if (!this.stashFull && // Check if stash will become full now
-				(Jack.STASH_MAX - this.stashCount) <= quantity){
+				(this.stashMax - this.stashCount) <= quantity){
 			this.stashFull = true;	
 			this.compost(patch); // Producing too fast - compost some plants
 			int available = this.patch.getPumpkinCount(); // Recalculate
-			quantity = Math.min(available, Jack.STASH_MAX - this.stashCount);
+			quantity = Math.min(available, this.stashMax - this.stashCount);
 		}
 		if (this.stashLow){ // If stash is running low, plant more pumpkins
 			sow(patch);
@@ -110,130 +155,119 @@ public class Jack {
 			this.stashLow = false;
 		}
 
-		// Replenish pumpkin stash
+		// Replenish pumpkin stash and determine what to do next
 		patch.pick(quantity);
-		this.incrementStash(quantity);
-
-		// Determine what to do next
-		if (this.shipFlag){
-			PumpkinEvent event = new ShipEvent(this);
-			this.program.processEvent(event);
-		} else if (this.gatherFlag && !this.stashFull){
-			PumpkinEvent event = new BeginGatherEvent(this, this.patch);
-			this.program.processEvent(event);
+		if (this.singleThreaded){
+			this.incrementStash(quantity);
+			worker.gathered(quantity);
+			this.endGather(worker);
 		} else {
-			this.active = false;
+			synchronized(this){
+				this.incrementStash(quantity);
+				worker.gathered(quantity);
+				this.endGather(worker);
+			}
 		}
 
 	}
 	/**
-	 * Begin the process of completing orders. Completes as many open orders
-	 * as allowed by stashCount
+	 * Begin the process of completing orders. The worker takes as many open
+	 * orders as the stash allows
 	 */
-	public void deliverShipment(){
-		int available, actual;
-		List<Order> fulfilled = new ArrayList<Order>();
+	public void deliverShipment(Worker worker){
+		List<Order> fulfilled = worker.fulfilled;
+		fulfilled.clear();
 
-		// Quit if stash is empty
-		if ((available = this.stashCount) == 0){
-			this.shipFlag = false;
-			this.active = false;
-			return;
-		}
-		
-		// Take orders out of "open" collection until amount == stash	
-		synchronized(this.openOrders){
-			Iterator<Order> i = this.openOrders.iterator();
-			while (i.hasNext() && (fulfilled.size() < available)){
-				fulfilled.add(i.next());
-				i.remove();
+		// Take orders out of "open" collection until amount == stash, and
+		// set their pumpkins aside so other workers cannot promise them
+		boolean shipping;
+		if (this.singleThreaded)
+			shipping = this.takeOrders(worker, fulfilled);
+		else {
+			synchronized(this){
+				shipping = this.takeOrders(worker, fulfilled);
 			}
-			this.shipFlag = false;
 		}
-		
-		// Quit if no orders to fulfill
-		if ((actual = fulfilled.size()) == 0){
-			this.active = false;
+		// Quit if stash is empty or there are no orders to fulfill
+		if (!shipping)
 			return;
-		}
-		
-		// Track number shipped so final shipment can identify itself
-		synchronized(this){
-			this.inTransit += actual;
-		}
 		
 		// Register timers for order completions after delivery
-		int duration = program.randomGaussian(60, 20);
-		for (Order o : fulfilled){
-			this.decrementStash();
-			PumpkinEvent event = new CompleteOrderEvent(this, o);
-			program.setTimer(event, duration); 
+		int duration = this.random.gaussian(Jack.MEAN_SHIP_INTERVAL,
+				Jack.MEAN_SHIP_DEVIATION);
+		for (int i = 0; i < fulfilled.size(); i++){
+			Order o = fulfilled.get(i);
+			o.worker = worker;
+			program.setTimer(o.getCompleteEvent(), duration); 
 		}
+		fulfilled.clear();
 
 	}
 	/**
-	 * Jack completes a pumpkin order when he arrives at the shipping
-	 * facility. The order is moved to the "completed" collection" and
-	 * Jack recalculates his stash strategy. If the timer has expired and
-	 * this is the final order, Jack signals the end of the program. Otherwise
-	 * he checks whether he needs to go collect pumpkins again or fulfull
-	 * more orders. If not, he rests.
+	 * Jack completes a pumpkin order when a worker arrives at the shipping
+	 * facility. The order's duration is recorded and Jack recalculates his
+	 * stash strategy. If the timer has expired and this is the final order,
+	 * Jack signals the end of the program. Otherwise once the worker has
+	 * delivered his whole shipment he checks whether he needs to go collect
+	 * pumpkins again or fulfull more orders. If not, he rests.
 	 */
 	public void completeOrder(Order order){
-		// Complete the actual order object and move it to the completed pile
+		// Complete the actual order object and record how long it took
 		order.complete();
-		synchronized(this.completedOrders){
-			this.completedOrders.add(order);
-		}
+		this.latency.record(order.getDuration());
 
 		// Stash was full, but now it's time to start collecting again
-		if (this.stashFull && this.stashCount <= Jack.REFILL_LEVEL)
+		if (this.stashFull && this.stashCount <= this.refillLevel)
 			this.stashFull = false;
 
 		// Stash is getting low - Jack remembers to plant seeds next time he
 		// gathers pumpkins
-		if (this.stashCount <= Jack.STASH_MIN)
+		if (this.stashCount <= this.stashMin)
 			this.stashLow = true;
 
-		// Determine if this is the last or only order in transit	
-		boolean allOrdersComplete = false;
-		synchronized(this){
-			if (--this.inTransit == 0)
-				allOrdersComplete = true;
+		// Determine if this is the last order of the worker's shipment, and
+		// the last or only order in transit
+		boolean shipmentComplete, allOrdersComplete;
+		if (this.singleThreaded){
+			shipmentComplete = --order.worker.inTransit == 0;
+			allOrdersComplete = --this.inTransit == 0;
+		} else {
+			synchronized(this){
+				shipmentComplete = --order.worker.inTransit == 0;
+				allOrdersComplete = --this.inTransit == 0;
+			}
 		}
 
 		// Check for program shutdown conditions: Timer has expired and this
 		// is the last order in transit
 		boolean shutdown = false;
-		if (this.program.timerExpired() && allOrdersComplete)
-			synchronized(this.openOrders){
-				if (this.openOrders.size() == 0)
-					shutdown = true;
-			}
+		if (this.program.timerExpired() && allOrdersComplete &&
+				this.openOrders.isEmpty())
+			shutdown = true;
 		// Tell program OK to stop
 		if (shutdown)
 			this.program.stop();
 
-		// If this is the last order in transit, determine what to do next
-		if (allOrdersComplete){
-			if (this.gatherFlag && !this.stashFull){
-				PumpkinEvent event = new BeginGatherEvent(this, this.patch);
-				this.program.processEvent(event);
-			} else if (this.shipFlag){
-				PumpkinEvent event = new ShipEvent(this);
-				this.program.processEvent(event);
-			} else { this.active = false; }
+		// If this is the last order of the shipment, determine what to do next
+		if (shipmentComplete){
+			if (this.singleThreaded)
+				this.next(order.worker, false);
+			else {
+				synchronized(this){
+					this.next(order.worker, false);
+				}
+			}
 		}
 	} // Jack receives a signal from the patch that pumpkins have ripened
-	// If he's busy, he gets a message. If not, he becomes busy and goes
-	// to the patch to gather pumpkins.
-	synchronized void patchReady(Patch patch){
-		if (this.active){
-			this.gatherFlag = true;
-		} else if (!this.stashFull) {
-			this.active = true;
-			PumpkinEvent event = new BeginGatherEvent(this, patch);
-			this.program.processEvent(event);
+	// If a worker is free, he goes to the patch to gather pumpkins. If not,
+	// the crew gets a message.
+	void patchReady(Patch patch){
+		if (this.singleThreaded)
+			this.callGather(patch);
+		else {
+			synchronized(this){
+				this.callGather(patch);
+			}
 		}
 	}
 	// Jack's stash has become full as he is producing them faster than
@@ -245,25 +279,105 @@ public class Jack {
 	// and plants more pumpkins
 	void sow(Patch patch){
 		patch.pick(1);
-		for (int i = 0; i < Patch.SEEDS_PER_PLANT; i++)
-			this.program.processEvent(new NewPlantEvent(this.program, patch, this));
+		if (this.seedsPerPlant > 0)
+			this.program.processEvent(patch == this.patch ? this.sowing :
+					new NewPlantsEvent(patch, this.seedsPerPlant));
 	}
-	private synchronized void incrementStash(int quantity){
+	// Add gathered pumpkins to the stash. Caller holds the Jack lock.
+	private void incrementStash(int quantity){
 		this.stashCount += quantity;
-		//Cannot exceed STASH_MAX
-		if (stashCount > Jack.STASH_MAX)
-			stashCount = Jack.STASH_MAX;
+		//Cannot exceed the stash's capacity
+		if (stashCount > this.stashMax)
+			stashCount = this.stashMax;
+	}
+	// Send an idle worker off to ship, or flag the order for the busy crew.
+	// Caller holds the Jack lock.
+	private void callShipment(){
+		Worker worker = this.idleWorkers.poll();
+		if (worker == null){
+			this.shipFlag = true;
+		} else { 
+			this.beginShipment(worker);
+		}
 	}
-	private synchronized void decrementStash(){
-		--this.stashCount;
+	// Send an idle worker off to gather, or flag the ripe pumpkins for the
+	// busy crew. Caller holds the Jack lock.
+	private void callGather(Patch patch){
+		if (!this.stashFull && !this.gathering && !this.idleWorkers.isEmpty()){
+			this.beginGather(this.idleWorkers.poll(), patch);
+		} else if (this.idleWorkers.size() < this.crew.length) {
+			this.gatherFlag = true;
+		}
+	}
+	// A worker has finished gathering: find him his next job. Caller holds
+	// the Jack lock.
+	private void endGather(Worker worker){
+		this.gathering = false;
+		this.next(worker, true);
+	}
+	// Move open orders the stash can fill into a worker's shipment and set
+	// their pumpkins aside, or send him to rest if there are none. Returns
+	// whether he has a shipment. Caller holds the Jack lock.
+	private boolean takeOrders(Worker worker, List<Order> fulfilled){
+		this.openOrders.drain(fulfilled, this.stashCount);
+		this.shipFlag = false;
+		if (fulfilled.isEmpty()){
+			this.rest(worker);
+			return false;
+		}
+		this.stashCount -= fulfilled.size();
+		// Track number shipped so final shipment can identify itself
+		this.inTransit += fulfilled.size();
+		worker.inTransit = fulfilled.size();
+		worker.shipped(fulfilled.size());
+		return true;
+	}
+	// Find the next job for a worker who has finished one. After gathering
+	// he ships first; after shipping he gathers first. Idle workers then
+	// pick up any flagged work he leaves. Caller holds the Jack lock.
+	private void next(Worker worker, boolean gathered){
+		boolean gather = this.gatherFlag && !this.stashFull && !this.gathering;
+		if (gathered && this.shipFlag){
+			this.beginShipment(worker);
+		} else if (gather){
+			this.beginGather(worker, this.patch);
+		} else if (this.shipFlag){
+			this.beginShipment(worker);
+		} else {
+			this.rest(worker);
+		}
+		while (!this.idleWorkers.isEmpty()){
+			if (this.shipFlag){
+				this.beginShipment(this.idleWorkers.poll());
+			} else if (this.gatherFlag && !this.stashFull && !this.gathering){
+				this.beginGather(this.idleWorkers.poll(), this.patch);
+			} else {
+				break;
+			}
+		}
+	}
+	// Send a worker off to deliver open orders. Caller holds the Jack lock.
+	private void beginShipment(Worker worker){
+		this.shipFlag = false;
+		worker.begin();
+		this.program.processEvent(worker.shipEvent);
+	}
+	// Send a worker off to gather pumpkins. Caller holds the Jack lock.
+	private void beginGather(Worker worker, Patch patch){
+		this.gathering = true;
+		worker.begin();
+		this.program.processEvent(worker.beginGatherEvent(patch));
+	}
+	// Let a worker rest until there is more work. Caller holds the Jack lock.
+	private void rest(Worker worker){
+		worker.end();
+		this.idleWorkers.add(worker);
 	}
 	// Jack is notified when the program's time has run out
 	void timerExpired(){
 		// If he still has open orders, ignore
-		synchronized(this.openOrders){
-			if (this.openOrders.size() > 0)
-				return;
-		}
+		if (!this.openOrders.isEmpty())
+			return;
 		// If he has orders in transit, ignore
 		if (this.inTransit > 0)
 			return;
@@ -272,41 +386,129 @@ public class Jack {
 		this.program.stop();
 		
 	}
-	// Calculate mean order completion time and standard deviation
+	// Summarize order completion times over the whole run
 	protected String completedOrderReport(){
-		int count, sum;
-		double mean, variance, deviationSum, stdDeviation;
-		synchronized(this.completedOrders){
-			Iterator<Order> i = this.completedOrders.iterator();
-			sum = 0;
-			count = 0;
-			while (i.hasNext()){
-				Order o = i.next();
-				sum += o.getDuration();
-				++count;
+		LatencyRecorder.Snapshot s = this.latency.snapshot();
+		return "Orders completed = " + s.getCount() +
+				"; order completion time " + s;
+	}
+	// Summarize order completion times since the previous window report
+	protected String orderWindowReport(){
+		LatencyRecorder.Snapshot s = this.latency.window();
+		if (s.getCount() == 0)
+			return "Orders completed in window = 0";
+		return "Orders completed in window = " + s.getCount() +
+				"; order completion time " + s;
+	}
+	// Exposes order completion time statistics
+	LatencyRecorder getLatency(){
+		return this.latency;
+	}
+	// Write the stash, the crew and the order backlog to a checkpoint. The
+	// program is quiescent, so the fields are read without locks.
+	void save(DataOutputStream out) throws IOException {
+		out.writeInt(this.stashCount);
+		out.writeInt(this.inTransit);
+		out.writeBoolean(this.stashFull);
+		out.writeBoolean(this.stashLow);
+		out.writeBoolean(this.gathering);
+		out.writeBoolean(this.shipFlag);
+		out.writeBoolean(this.gatherFlag);
+		out.writeInt(this.crew.length);
+		for (Worker w : this.crew)
+			w.save(out);
+		out.writeInt(this.idleWorkers.size());
+		for (Worker w : this.idleWorkers)
+			out.writeInt(w.number);
+		out.writeInt(this.openOrders.size());
+		for (Order o : this.openOrders)
+			out.writeInt(o.timestamp);
+		this.latency.save(out);
+	}
+	// Read back the state written by save()
+	void restore(DataInputStream in) throws IOException {
+		this.stashCount = in.readInt();
+		this.inTransit = in.readInt();
+		this.stashFull = in.readBoolean();
+		this.stashLow = in.readBoolean();
+		this.gathering = in.readBoolean();
+		this.shipFlag = in.readBoolean();
+		this.gatherFlag = in.readBoolean();
+		if (in.readInt() != this.crew.length)
+			throw new IOException("Checkpoint crew does not match --workers");
+		for (Worker w : this.crew)
+			w.restore(in);
+		this.idleWorkers.clear();
+		for (int n = in.readInt(); n > 0; n--)
+			this.idleWorkers.add(this.getWorker(in.readInt()));
+		this.openOrders.clear();
+		for (int n = in.readInt(); n > 0; n--)
+			this.openOrders.add(this.newOrder(in.readInt()));
+		this.latency.restore(in);
+	}
+	// Recreate an order that a worker is out delivering
+	Order restoreOrder(int timestamp, Worker worker){
+		Order o = this.newOrder(timestamp);
+		o.worker = worker;
+		return o;
+	}
+	// Take a completed order for reuse, or create one if there are none
+	private Order newOrder(int timestamp){
+		Order o;
+		if (this.singleThreaded)
+			o = this.spareOrders.poll();
+		else {
+			synchronized(this.spareOrders){
+				o = this.spareOrders.poll();
 			}
-			mean = (double)sum / count;
-
-			deviationSum = 0;
-			i = this.completedOrders.iterator();
-			while (i.hasNext()){
-				Order o = i.next();
-				double deviation = o.getDuration() - mean;
-				deviationSum += Math.pow(deviation, 2); 
+		}
+		if (o == null)
+			return new Order(timestamp);
+		o.timestamp = timestamp;
+		o.duration = 0;
+		o.worker = null;
+		return o;
+	}
+	// Keep an order whose completion has been recorded and logged for reuse
+	void recycle(Order order){
+		if (this.singleThreaded)
+			this.spareOrders.add(order);
+		else {
+			synchronized(this.spareOrders){
+				this.spareOrders.add(order);
 			}
 		}
-		variance = deviationSum / count;
-		stdDeviation = Math.sqrt(variance);
-		return "Mean order completion time = " + String.format("%.2f", mean) + 
-				"; standard deviation = " + String.format("%.2f", stdDeviation);
-
 	}
-	// Simple Order class to track when orders were placed and completed
+	// Find a crew member by number, counting from 1
+	Worker getWorker(int number){
+		if (number < 1 || number > this.crew.length)
+			throw new IllegalArgumentException("No worker " + number);
+		return this.crew[number - 1];
+	}
+	// Describe how busy each worker was over the run, one line per worker
+	protected List<String> workerReport(){
+		List<String> report = new ArrayList<String>();
+		int elapsed = Math.max(1, this.program.getTimestamp());
+		synchronized(this){
+			for (Worker w : this.crew)
+				report.add(w.report(elapsed));
+		}
+		return report;
+	}
+	// Simple Order class to track when orders were placed and completed.
+	// Orders are reused once complete, each with its own completion event.
 	class Order {
-		private final int timestamp;
+		private int timestamp;
 		private int duration;
+		private Worker worker; // Worker delivering the order
+		volatile Order next; // Next open order in Jack's OrderQueue
+		private final CompleteOrderEvent completion;
 		Order(){
-			this.timestamp = Jack.this.program.getTimestamp();
+			this(Jack.this.program.getTimestamp());
+		}
+		Order(int timestamp){
+			this.timestamp = timestamp;
+			this.completion = new CompleteOrderEvent(Jack.this, this);
 		}
 		void complete(){
 			this.duration = Jack.this.program.getTimestamp() - this.timestamp;
@@ -314,6 +516,135 @@ public class Jack {
 		int getDuration(){
 			return this.duration;
 		}
+		int getTimestamp(){
+			return this.timestamp;
+		}
+		Worker getWorker(){
+			return this.worker;
+		}
+		CompleteOrderEvent getCompleteEvent(){
+			return this.completion;
+		}
+	}
+	// A member of Jack's crew, who tracks the time he spends busy
+	class Worker {
+		private final int number;
+		private int inTransit; // Orders still out in his current shipment
+		private int busySince;
+		private long busyTime;
+		private boolean busy;
+		private int shipments;
+		private int ordersShipped;
+		private int gathers;
+		private long pumpkinsGathered;
+		// A worker does one job at a time, so his events are reused
+		private final ShipEvent shipEvent;
+		private BeginGatherEvent beginGather;
+		private CompleteGatherEvent spareGather; // Finished, for reuse
+		private final List<Order> fulfilled; // Orders in the shipment being made
+		Worker(int number){
+			this.number = number;
+			this.shipEvent = new ShipEvent(Jack.this, this);
+			this.fulfilled = new ArrayList<Order>();
+		}
+		int getNumber(){
+			return this.number;
+		}
+		// The event that sends him to gather in a patch. Caller holds the
+		// Jack lock.
+		BeginGatherEvent beginGatherEvent(Patch patch){
+			if (this.beginGather == null || this.beginGather.getPatch() != patch)
+				this.beginGather = new BeginGatherEvent(Jack.this, this, patch);
+			return this.beginGather;
+		}
+		// An event for him finishing a gather, reusing his last one once the
+		// program is done with it
+		CompleteGatherEvent completeGatherEvent(Patch patch, int quantity){
+			CompleteGatherEvent event;
+			if (Jack.this.singleThreaded)
+				event = this.takeSpareGather();
+			else {
+				synchronized(this){
+					event = this.takeSpareGather();
+				}
+			}
+			if (event == null)
+				return new CompleteGatherEvent(Jack.this, this, patch, quantity);
+			event.reset(patch, quantity);
+			return event;
+		}
+		// Keep a finished gather event for reuse
+		void recycle(CompleteGatherEvent event){
+			if (Jack.this.singleThreaded)
+				this.spareGather = event;
+			else {
+				synchronized(this){
+					this.spareGather = event;
+				}
+			}
+		}
+		// Take his spare gather event, if he has one. Caller holds his lock.
+		private CompleteGatherEvent takeSpareGather(){
+			CompleteGatherEvent event = this.spareGather;
+			this.spareGather = null;
+			return event;
+		}
+		// Start a job, unless already busy with the one before it
+		void begin(){
+			if (!this.busy){
+				this.busy = true;
+				this.busySince = Jack.this.program.getTimestamp();
+			}
+		}
+		// Finish working and become idle
+		void end(){
+			if (this.busy){
+				this.busy = false;
+				this.busyTime += Jack.this.program.getTimestamp() - this.busySince;
+			}
+		}
+		// Count a shipment. Caller holds the Jack lock.
+		void shipped(int orders){
+			++this.shipments;
+			this.ordersShipped += orders;
+		}
+		// Count a gather. Caller holds the Jack lock.
+		void gathered(int quantity){
+			++this.gathers;
+			this.pumpkinsGathered += quantity;
+		}
+		synchronized void save(DataOutputStream out) throws IOException {
+			out.writeInt(this.inTransit);
+			out.writeInt(this.busySince);
+			out.writeLong(this.busyTime);
+			out.writeBoolean(this.busy);
+			out.writeInt(this.shipments);
+			out.writeInt(this.ordersShipped);
+			out.writeInt(this.gathers);
+			out.writeLong(this.pumpkinsGathered);
+		}
+		synchronized void restore(DataInputStream in) throws IOException {
+			this.inTransit = in.readInt();
+			this.busySince = in.readInt();
+			this.busyTime = in.readLong();
+			this.busy = in.readBoolean();
+			this.shipments = in.readInt();
+			this.ordersShipped = in.readInt();
+			this.gathers = in.readInt();
+			this.pumpkinsGathered = in.readLong();
+		}
+		// Utilization and job counts over the given elapsed time
+		synchronized String report(int elapsed){
+			long busy = this.busyTime;
+			if (this.busy)
+				busy += Jack.this.program.getTimestamp() - this.busySince;
+			return "Worker " + this.number + " utilization = " +
+					String.format("%.2f%%", 100.0 * busy / elapsed) +
+					"; shipments = " + this.shipments +
+					", orders = " + this.ordersShipped +
+					", gathers = " + this.gathers +
+					", pumpkins = " + this.pumpkinsGathered;
+		}
 	}
 
 }
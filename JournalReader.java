@@ -0,0 +1,126 @@
+package pumpkins;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+/**
+ * The JournalReader class reads an EventJournal and converts its records
+ * back into the text log format, optionally limited to a range of
+ * timestamps. The sparse index is used to skip blocks of records that lie
+ * entirely outside the range.
+ */
+public class JournalReader {
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final String[] descriptions;
+	private final String[] messages;
+	private final long count;
+	private final int indexInterval;
+	private final int[] blockMin;
+	private final int[] blockMax;
+	/**
+	 * Converter entry point. Arguments are the journal file and an optional
+	 * first and last timestamp; the text log is written to standard output.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1 || args.length > 3){
+			System.err.println("Usage: JournalReader <journal> [from [to]]");
+			return;
+		}
+		int from = args.length > 1 ? Integer.parseInt(args[1]) : Integer.MIN_VALUE;
+		int to = args.length > 2 ? Integer.parseInt(args[2]) : Integer.MAX_VALUE;
+		JournalReader reader = new JournalReader(new File(args[0]));
+		Writer out = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+		try {
+			reader.convert(from, to, out);
+		} finally {
+			out.flush();
+			reader.close();
+		}
+	}
+	/**
+	 * Open a journal and read its header, index and messages
+	 */
+	public JournalReader(File file) throws IOException {
+		this.file = new RandomAccessFile(file, "r");
+		this.channel = this.file.getChannel();
+
+		DataInputStream header = new DataInputStream(new BufferedInputStream(
+				Channels.newInputStream(this.channel.position(0))));
+		if (header.readInt() != EventJournal.MAGIC)
+			throw new IOException(file + " is not a complete event journal");
+		int version = header.readInt();
+		if (version != EventJournal.VERSION)
+			throw new IOException("Unsupported journal version " + version);
+		if (header.readInt() != EventJournal.RECORD_SIZE)
+			throw new IOException("Unexpected journal record size");
+		this.indexInterval = header.readInt();
+		this.count = header.readLong();
+		long trailerOffset = header.readLong();
+		this.descriptions = new String[header.readInt()];
+		for (int i = 1; i < this.descriptions.length; i++)
+			this.descriptions[i] = header.readUTF();
+
+		DataInputStream trailer = new DataInputStream(new BufferedInputStream(
+				Channels.newInputStream(this.channel.position(trailerOffset))));
+		int blocks = (int)((this.count + this.indexInterval - 1) / this.indexInterval);
+		this.blockMin = new int[blocks];
+		this.blockMax = new int[blocks];
+		for (int i = 0; i < blocks; i++){
+			this.blockMin[i] = trailer.readInt();
+			this.blockMax[i] = trailer.readInt();
+		}
+		this.messages = new String[trailer.readInt()];
+		for (int i = 0; i < this.messages.length; i++)
+			this.messages[i] = trailer.readUTF();
+	}
+	/**
+	 * Get number of records in the journal
+	 */
+	public long getRecordCount(){
+		return this.count;
+	}
+	/**
+	 * Write the records with timestamps in [from, to] as text log lines
+	 */
+	public void convert(int from, int to, Appendable out) throws IOException {
+		StringBuilder line = new StringBuilder();
+		for (int block = 0; block < this.blockMin.length; block++){
+			// Skip blocks whose records all fall outside the range
+			if (this.blockMax[block] < from || this.blockMin[block] > to)
+				continue;
+			long first = (long)block * this.indexInterval;
+			int records = (int)Math.min(this.indexInterval, this.count - first);
+			MappedByteBuffer buffer = this.channel.map(
+					FileChannel.MapMode.READ_ONLY,
+					EventJournal.HEADER_SIZE + first * EventJournal.RECORD_SIZE,
+					(long)records * EventJournal.RECORD_SIZE);
+			for (int i = 0; i < records; i++){
+				int type = buffer.getInt();
+				int timestamp = buffer.getInt();
+				int stash = buffer.getInt();
+				int field = buffer.getInt();
+				int detail = buffer.getInt();
+				if (timestamp < from || timestamp > to)
+					continue;
+				line.setLength(0);
+				LogWriter.format(line, timestamp, this.describe(type, detail),
+						stash, field);
+				out.append(line);
+			}
+		}
+	}
+	/**
+	 * Close the journal file
+	 */
+	public void close() throws IOException {
+		this.file.close();
+	}
+	// Rebuild the log message for a record
+	private String describe(int type, int detail){
+		if (type == EventJournal.MESSAGE)
+			return this.messages[detail];
+		if (detail == EventJournal.NO_DETAIL)
+			return this.descriptions[type];
+		return this.descriptions[type] + " (" + detail + ")";
+	}
+}
@@ -0,0 +1,219 @@
+package pumpkins;
+import java.io.*;
+import java.util.concurrent.atomic.*;
+/**
+ * The LatencyRecorder keeps running statistics of order completion times
+ * in constant memory. Durations are counted in log-linear buckets: exact
+ * below 64, and above that 32 buckets per power of two, so a percentile
+ * is within about 3% of the true value. Mean, standard deviation and
+ * maximum are exact. Recording takes no locks, so any number of threads
+ * may record at once. Besides totals since the start, the recorder gives
+ * snapshots of the durations recorded since the previous snapshot.
+ */
+public class LatencyRecorder {
+	private final static int SUB_BUCKET_BITS = 5;
+	private final static int SUB_BUCKETS = 1 << LatencyRecorder.SUB_BUCKET_BITS;
+	private final static int EXACT_LIMIT = 2 * LatencyRecorder.SUB_BUCKETS;
+	// Enough buckets for every non-negative int
+	private final static int BUCKETS = LatencyRecorder.index(Integer.MAX_VALUE) + 1;
+	private final AtomicLongArray counts;
+	private final LongAdder sum;
+	private final DoubleAdder sumOfSquares;
+	private final AtomicInteger max;
+	private Snapshot last; // Totals at the previous window snapshot
+	/**
+	 * Create an empty recorder
+	 */
+	public LatencyRecorder(){
+		this.counts = new AtomicLongArray(LatencyRecorder.BUCKETS);
+		this.sum = new LongAdder();
+		this.sumOfSquares = new DoubleAdder();
+		this.max = new AtomicInteger();
+		this.last = new Snapshot(new long[LatencyRecorder.BUCKETS], 0, 0, 0);
+	}
+	/**
+	 * Record one duration. Negative durations count as zero.
+	 */
+	public void record(int duration){
+		if (duration < 0)
+			duration = 0;
+		this.counts.incrementAndGet(LatencyRecorder.index(duration));
+		this.sum.add(duration);
+		this.sumOfSquares.add((double)duration * duration);
+		int max;
+		while (duration > (max = this.max.get()) &&
+				!this.max.compareAndSet(max, duration));
+	}
+	/**
+	 * Get statistics of every duration recorded so far
+	 */
+	public Snapshot snapshot(){
+		long[] counts = new long[LatencyRecorder.BUCKETS];
+		for (int i = 0; i < counts.length; i++)
+			counts[i] = this.counts.get(i);
+		return new Snapshot(counts, this.sum.sum(), this.sumOfSquares.sum(),
+				this.max.get());
+	}
+	/**
+	 * Get statistics of the durations recorded since the previous call, or
+	 * since the recorder was created. The maximum is that of the highest
+	 * bucket used in the window.
+	 */
+	public synchronized Snapshot window(){
+		Snapshot total = this.snapshot();
+		long[] counts = new long[LatencyRecorder.BUCKETS];
+		int max = 0;
+		for (int i = 0; i < counts.length; i++){
+			counts[i] = total.counts[i] - this.last.counts[i];
+			if (counts[i] > 0)
+				max = LatencyRecorder.highest(i);
+		}
+		Snapshot window = new Snapshot(counts, total.sum - this.last.sum,
+				total.sumOfSquares - this.last.sumOfSquares,
+				Math.min(max, total.max));
+		this.last = total;
+		return window;
+	}
+	// Add every duration counted by another recorder, e.g. one that counted
+	// its share of a log on another thread
+	void add(LatencyRecorder other){
+		Snapshot s = other.snapshot();
+		for (int i = 0; i < s.counts.length; i++)
+			if (s.counts[i] > 0)
+				this.counts.addAndGet(i, s.counts[i]);
+		this.sum.add(s.sum);
+		this.sumOfSquares.add(s.sumOfSquares);
+		int max;
+		while (s.max > (max = this.max.get()) &&
+				!this.max.compareAndSet(max, s.max));
+	}
+	// Write the totals to a checkpoint, as (bucket, count) pairs for the
+	// buckets in use
+	synchronized void save(DataOutputStream out) throws IOException {
+		Snapshot total = this.snapshot();
+		int used = 0;
+		for (long c : total.counts)
+			if (c > 0)
+				++used;
+		out.writeInt(used);
+		for (int i = 0; i < total.counts.length; i++)
+			if (total.counts[i] > 0){
+				out.writeInt(i);
+				out.writeLong(total.counts[i]);
+			}
+		out.writeLong(total.sum);
+		out.writeDouble(total.sumOfSquares);
+		out.writeInt(total.max);
+	}
+	// Add the totals written by save() to an empty recorder. The next window
+	// starts at the checkpoint.
+	synchronized void restore(DataInputStream in) throws IOException {
+		for (int n = in.readInt(); n > 0; n--){
+			int i = in.readInt();
+			this.counts.addAndGet(i, in.readLong());
+		}
+		this.sum.add(in.readLong());
+		this.sumOfSquares.add(in.readDouble());
+		this.max.set(in.readInt());
+		this.last = this.snapshot();
+	}
+	// Bucket of a non-negative duration
+	private static int index(int duration){
+		if (duration < LatencyRecorder.EXACT_LIMIT)
+			return duration;
+		int shift = 31 - Integer.numberOfLeadingZeros(duration) -
+				LatencyRecorder.SUB_BUCKET_BITS;
+		return shift * LatencyRecorder.SUB_BUCKETS + (duration >>> shift);
+	}
+	// Smallest duration counted in a bucket
+	private static int lowest(int index){
+		if (index < LatencyRecorder.EXACT_LIMIT)
+			return index;
+		int shift = (index >>> LatencyRecorder.SUB_BUCKET_BITS) - 1;
+		return (index - shift * LatencyRecorder.SUB_BUCKETS) << shift;
+	}
+	// Largest duration counted in a bucket
+	private static int highest(int index){
+		if (index == LatencyRecorder.BUCKETS - 1)
+			return Integer.MAX_VALUE;
+		return LatencyRecorder.lowest(index + 1) - 1;
+	}
+	/**
+	 * Snapshot is a fixed copy of a recorder's statistics
+	 */
+	public static class Snapshot {
+		private final long[] counts;
+		private final long count;
+		private final long sum;
+		private final double sumOfSquares;
+		private final int max;
+		Snapshot(long[] counts, long sum, double sumOfSquares, int max){
+			long count = 0;
+			for (long c : counts)
+				count += c;
+			this.counts = counts;
+			this.count = count;
+			this.sum = sum;
+			this.sumOfSquares = sumOfSquares;
+			this.max = max;
+		}
+		/**
+		 * Get number of durations recorded
+		 */
+		public long getCount(){
+			return this.count;
+		}
+		/**
+		 * Get mean duration
+		 */
+		public double getMean(){
+			return (double)this.sum / this.count;
+		}
+		/**
+		 * Get standard deviation of the durations
+		 */
+		public double getStandardDeviation(){
+			double mean = this.getMean();
+			return Math.sqrt(Math.max(0, this.sumOfSquares / this.count - mean * mean));
+		}
+		/**
+		 * Get longest duration
+		 */
+		public int getMax(){
+			return this.max;
+		}
+		/**
+		 * Get the duration that the given percentage of durations do not
+		 * exceed, to the precision of its bucket
+		 */
+		public int getPercentile(double percent){
+			if (this.count == 0)
+				return 0;
+			long rank = (long)Math.ceil(percent / 100 * this.count);
+			long seen = 0;
+			for (int i = 0; i < this.counts.length; i++){
+				seen += this.counts[i];
+				if (seen >= Math.max(1, rank)){
+					// Middle of the bucket, but never beyond the longest duration
+					int low = LatencyRecorder.lowest(i);
+					int mid = low + (LatencyRecorder.highest(i) - low) / 2;
+					return Math.min(mid, this.max);
+				}
+			}
+			return this.max;
+		}
+		/**
+		 * Describe the snapshot as mean, standard deviation and percentiles
+		 */
+		public String toString(){
+			return "mean = " + String.format("%.2f", this.getMean()) +
+					"; standard deviation = " +
+					String.format("%.2f", this.getStandardDeviation()) +
+					"; p50 = " + this.getPercentile(50) +
+					", p90 = " + this.getPercentile(90) +
+					", p99 = " + this.getPercentile(99) +
+					", p99.9 = " + this.getPercentile(99.9) +
+					", max = " + this.max;
+		}
+	}
+}
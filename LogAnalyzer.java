@@ -0,0 +1,499 @@
+package pumpkins;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.util.*;
+import java.util.concurrent.*;
+/**
+ * The LogAnalyzer class summarizes a text log written by a Program. The
+ * log is memory-mapped and split into chunks that each end at a line
+ * break, and the chunks are parsed in parallel straight from the mapped
+ * bytes. A line is read as "timestamp: description - stash = N - field =
+ * M", where the description may end in a number in brackets, such as the
+ * duration in "Order completed (140)". Descriptions are counted by their
+ * text up to any bracketed number or " = ", and a new String is made only
+ * the first time a chunk meets a description. Each chunk keeps its own
+ * counts, order completion times and time series, which are merged in
+ * file order once every chunk is done.
+ *
+ * The report gives the number and rate of each kind of line, the order
+ * completion times with a histogram in powers of two, and the stash and
+ * field downsampled to a fixed number of points, which are written to a
+ * CSV file. Run it as pumpkins.LogAnalyzer <log> [--threads=N]
+ * [--points=N] [--series=FILE]. The defaults are one thread per processor,
+ * 1000 points and <log>.series.csv. A rolling log's segments are gzipped,
+ * so they must be unzipped first.
+ */
+public class LogAnalyzer {
+	private final static byte[] STASH = " - stash = ".getBytes(StandardCharsets.US_ASCII);
+	private final static byte[] FIELD = " - field = ".getBytes(StandardCharsets.US_ASCII);
+	private final static String LATENCY = CompleteOrderEvent.EVENT_DESCRIPTION;
+	private final static int MIN_CHUNK = 1 << 20;
+	private final static int MAX_CHUNK = 1 << 30;
+	private final static int SCAN = 1 << 12;
+	private final static int HISTOGRAM_BINS = 33; // Zero, then each power of two
+	private final static String[] SERIES_COLUMNS = { "time", "records",
+		"stash_min", "stash_max", "stash_last", "field_min", "field_max",
+		"field_last" };
+	private final File file;
+	private final int threads;
+	private final int points;
+	private int first; // Timestamp of the first line, where the series starts
+	private int width; // Time units per point of the series
+	private int buckets;
+	/**
+	 * Analyzer entry point
+	 */
+	public static void main(String[] args) throws IOException {
+		File log = null;
+		File series = null;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int points = 1000;
+		for (String arg : args){
+			if (arg.startsWith("--threads="))
+				threads = Integer.parseInt(arg.substring(10));
+			else if (arg.startsWith("--points="))
+				points = Integer.parseInt(arg.substring(9));
+			else if (arg.startsWith("--series="))
+				series = new File(arg.substring(9));
+			else if (log == null && !arg.startsWith("--"))
+				log = new File(arg);
+			else {
+				log = null;
+				break;
+			}
+		}
+		if (log == null || threads < 1 || points < 1){
+			System.err.println("Usage: LogAnalyzer <log> [--threads=N] " +
+					"[--points=N] [--series=FILE]");
+			return;
+		}
+		if (series == null)
+			series = new File(log.getPath() + ".series.csv");
+
+		LogAnalyzer analyzer = new LogAnalyzer(log, threads, points);
+		long start = System.nanoTime();
+		Chunk total = analyzer.analyze();
+		double seconds = (System.nanoTime() - start) / 1e9;
+		analyzer.report(total, seconds, System.out);
+		try (PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(series)))){
+			analyzer.writeSeries(total, out);
+		}
+		System.out.println("Series of " + analyzer.buckets + " points, " +
+				analyzer.width + " time units apart, written to " + series);
+	}
+	/**
+	 * Create an analyzer for a log, parsing on the given number of threads
+	 * and downsampling the stash and field to the given number of points
+	 */
+	public LogAnalyzer(File file, int threads, int points){
+		this.file = file;
+		this.threads = threads;
+		this.points = points;
+	}
+	// Parse the whole log and return the merged totals
+	Chunk analyze() throws IOException {
+		try (FileChannel channel = FileChannel.open(this.file.toPath())){
+			long size = channel.size();
+			int[] range = LogAnalyzer.timeRange(channel, size);
+			this.first = range[0];
+			long span = Math.max(0, (long)range[1] - range[0]);
+			this.width = (int)Math.max(1, span / this.points + 1);
+			this.buckets = (int)(span / this.width) + 1;
+
+			// Chunks of about an even share for each thread, several per
+			// thread so a slow chunk does not hold up the rest
+			long chunkSize = Math.min(LogAnalyzer.MAX_CHUNK, Math.max(
+					LogAnalyzer.MIN_CHUNK, size / (4L * this.threads)));
+			List<Chunk> chunks = new ArrayList<Chunk>();
+			for (long from = 0; from < size;){
+				long to = from + chunkSize >= size ? size :
+						LogAnalyzer.lineStart(channel, from + chunkSize, size);
+				chunks.add(new Chunk(channel.map(FileChannel.MapMode.READ_ONLY,
+						from, to - from)));
+				from = to;
+			}
+
+			ExecutorService pool = Executors.newFixedThreadPool(this.threads);
+			Chunk total = new Chunk(null);
+			try {
+				for (Future<Chunk> done : pool.invokeAll(chunks))
+					total.merge(done.get());
+			} catch (InterruptedException ie){
+				ie.printStackTrace();
+			} catch (ExecutionException ee){
+				throw new IOException("Cannot parse " + this.file, ee.getCause());
+			} finally {
+				pool.shutdown();
+			}
+			return total;
+		}
+	}
+	// Print the line counts and rates, order completion times and histogram
+	void report(Chunk total, double seconds, PrintStream out){
+		long span = Math.max(1, (long)total.lastTime - total.firstTime);
+		out.println("Lines = " + total.records + "; malformed = " + total.malformed +
+				"; time " + total.firstTime + " to " + total.lastTime + "; " +
+				String.format(Locale.ROOT, "%.1f MB/s on %d threads",
+				total.bytesRead / 1e6 / Math.max(seconds, 1e-9), this.threads));
+		out.println();
+		out.println("description\tcount\tper_1000\tbracketed_sum");
+		for (Map.Entry<String, long[]> e : total.types.entrySet()){
+			long[] t = e.getValue();
+			out.println(e.getKey() + "\t" + t[0] + "\t" +
+					String.format(Locale.ROOT, "%.3f", 1000.0 * t[0] / span) + "\t" +
+					(t[2] > 0 ? Long.toString(t[1]) : ""));
+		}
+		LatencyRecorder.Snapshot latency = total.latency.snapshot();
+		if (latency.getCount() == 0)
+			return;
+		out.println();
+		out.println("Order completion time: count = " + latency.getCount() + "; " + latency);
+		out.println("duration\tcount");
+		for (int bin = 0; bin < LogAnalyzer.HISTOGRAM_BINS; bin++){
+			if (total.histogram[bin] == 0)
+				continue;
+			long low = bin == 0 ? 0 : 1L << (bin - 1);
+			long high = bin == 0 ? 0 : (1L << bin) - 1;
+			out.println(low + "-" + high + "\t" + total.histogram[bin]);
+		}
+	}
+	// Write one row per point of the downsampled series
+	void writeSeries(Chunk total, PrintWriter out){
+		out.println(String.join(",", LogAnalyzer.SERIES_COLUMNS));
+		for (int b = 0; b < this.buckets; b++){
+			if (total.series[b] == 0)
+				continue;
+			out.println(((long)this.first + (long)b * this.width) + "," +
+					total.series[b] + "," +
+					total.stashMin[b] + "," + total.stashMax[b] + "," +
+					total.stashLast[b] + "," + total.fieldMin[b] + "," +
+					total.fieldMax[b] + "," + total.fieldLast[b]);
+		}
+	}
+	// The timestamps of the first and last lines, which bound the series.
+	// Lines logged from several threads may be a little out of order, so
+	// times outside the range are put in the first or last point.
+	private static int[] timeRange(FileChannel channel, long size) throws IOException {
+		ByteBuffer head = ByteBuffer.allocate((int)Math.min(size, LogAnalyzer.SCAN));
+		channel.read(head, 0);
+		int first = LogAnalyzer.leadingNumber(head, 0, head.position());
+		// Back from the end to the start of the last line that has any text
+		long end = size;
+		while (true){
+			long from = Math.max(0, end - LogAnalyzer.SCAN);
+			ByteBuffer tail = ByteBuffer.allocate((int)(end - from));
+			channel.read(tail, from);
+			int stop = tail.position();
+			while (stop > 0 && (tail.get(stop - 1) == '\n' || tail.get(stop - 1) == '\r'))
+				--stop;
+			int start = stop;
+			while (start > 0 && tail.get(start - 1) != '\n')
+				--start;
+			if ((start > 0 || from == 0) && stop > 0){
+				int last = LogAnalyzer.leadingNumber(tail, start, stop);
+				return new int[] { first, Math.max(first, last) };
+			}
+			if (from == 0)
+				return new int[] { first, first };
+			end = from + stop;
+		}
+	}
+	// Offset of the first line that starts at or after the given offset
+	private static long lineStart(FileChannel channel, long offset, long size) throws IOException {
+		ByteBuffer scan = ByteBuffer.allocate(LogAnalyzer.SCAN);
+		for (long at = offset - 1; at < size; at += scan.limit()){
+			scan.clear();
+			if (channel.read(scan, at) <= 0)
+				break;
+			scan.flip();
+			for (int i = 0; i < scan.limit(); i++)
+				if (scan.get(i) == '\n')
+					return at + i + 1;
+		}
+		return size;
+	}
+	// The number at the start of a line, or 0 if it has none
+	private static int leadingNumber(ByteBuffer bytes, int from, int to){
+		int n = 0;
+		for (int i = from; i < to && bytes.get(i) >= '0' && bytes.get(i) <= '9'; i++)
+			n = n * 10 + (bytes.get(i) - '0');
+		return n;
+	}
+	/**
+	 * The Chunk class parses one line-aligned part of the log and holds its
+	 * totals. The totals of the whole log are merged into a Chunk with no
+	 * bytes of its own.
+	 */
+	class Chunk implements Callable<Chunk> {
+		private final ByteBuffer bytes;
+		// Descriptions met in this chunk, as an open-addressed hash table
+		private byte[][] keys;
+		private long[] counts;
+		private long[] sums; // Sum of the bracketed numbers
+		private long[] bracketed; // Number of lines with a bracketed number
+		private int[] slots; // Index of a key plus one, or 0 if empty
+		private int size;
+		private int latencyType;
+		// Merged totals, by description
+		private final Map<String, long[]> types;
+		private final LatencyRecorder latency;
+		private final long[] histogram;
+		private final int[] series;
+		private final int[] stashMin, stashMax, stashLast;
+		private final int[] fieldMin, fieldMax, fieldLast;
+		private long records;
+		private long malformed;
+		private int firstTime;
+		private int lastTime;
+		private long bytesRead;
+		Chunk(ByteBuffer bytes){
+			this.bytes = bytes;
+			this.keys = new byte[16][];
+			this.counts = new long[16];
+			this.sums = new long[16];
+			this.bracketed = new long[16];
+			this.slots = new int[32];
+			this.size = 0;
+			this.latencyType = -1;
+			this.types = new TreeMap<String, long[]>();
+			this.latency = new LatencyRecorder();
+			this.histogram = new long[LogAnalyzer.HISTOGRAM_BINS];
+			int buckets = LogAnalyzer.this.buckets;
+			this.series = new int[buckets];
+			this.stashMin = new int[buckets];
+			this.stashMax = new int[buckets];
+			this.stashLast = new int[buckets];
+			this.fieldMin = new int[buckets];
+			this.fieldMax = new int[buckets];
+			this.fieldLast = new int[buckets];
+			this.firstTime = Integer.MAX_VALUE;
+			this.lastTime = Integer.MIN_VALUE;
+		}
+		/**
+		 * Parse every line in the chunk
+		 */
+		public Chunk call(){
+			ByteBuffer b = this.bytes;
+			int end = b.limit();
+			int start = 0;
+			for (int i = 0; i < end; i++)
+				if (b.get(i) == '\n'){
+					this.line(start, i);
+					start = i + 1;
+				}
+			if (start < end)
+				this.line(start, end);
+			this.bytesRead = end;
+			for (int t = 0; t < this.size; t++)
+				this.types.put(new String(this.keys[t], StandardCharsets.US_ASCII),
+						new long[] { this.counts[t], this.sums[t], this.bracketed[t] });
+			return this;
+		}
+		// Parse one line, from start up to its line break
+		private void line(int start, int end){
+			ByteBuffer b = this.bytes;
+			if (end > start && b.get(end - 1) == '\r')
+				--end;
+			if (end == start)
+				return;
+			// Timestamp, up to ": "
+			int i = start;
+			int timestamp = 0;
+			while (i < end && b.get(i) >= '0' && b.get(i) <= '9')
+				timestamp = timestamp * 10 + (b.get(i++) - '0');
+			if (i == start || i + 1 >= end || b.get(i) != ':' || b.get(i + 1) != ' '){
+				++this.malformed;
+				return;
+			}
+			int description = i + 2;
+			// Field and stash, read back from the end of the line
+			int[] cursor = { end };
+			int field = this.numberBefore(cursor, description);
+			if (!this.endsWith(cursor, LogAnalyzer.FIELD, description)){
+				++this.malformed;
+				return;
+			}
+			int stash = this.numberBefore(cursor, description);
+			if (!this.endsWith(cursor, LogAnalyzer.STASH, description)){
+				++this.malformed;
+				return;
+			}
+			int descriptionEnd = cursor[0];
+			// The description is counted up to a bracketed number or " = "
+			int keyEnd = descriptionEnd;
+			int detail = -1;
+			for (int j = description; j + 1 < descriptionEnd; j++){
+				if (b.get(j) != ' ')
+					continue;
+				byte next = b.get(j + 1);
+				if (next == '='){
+					keyEnd = j;
+					break;
+				}
+				if (next == '(' && b.get(descriptionEnd - 1) == ')'){
+					detail = 0;
+					for (int k = j + 2; k < descriptionEnd - 1; k++){
+						byte c = b.get(k);
+						if (c < '0' || c > '9'){
+							detail = -1;
+							break;
+						}
+						detail = detail * 10 + (c - '0');
+					}
+					if (detail >= 0){
+						keyEnd = j;
+						break;
+					}
+				}
+			}
+			int type = this.find(description, keyEnd);
+			++this.counts[type];
+			if (detail >= 0){
+				this.sums[type] += detail;
+				++this.bracketed[type];
+				if (type == this.latencyType){
+					this.latency.record(detail);
+					++this.histogram[32 - Integer.numberOfLeadingZeros(detail)];
+				}
+			}
+
+			++this.records;
+			this.firstTime = Math.min(this.firstTime, timestamp);
+			this.lastTime = Math.max(this.lastTime, timestamp);
+			LogAnalyzer analyzer = LogAnalyzer.this;
+			int point = (int)Math.max(0, Math.min(analyzer.buckets - 1,
+					((long)timestamp - analyzer.first) / analyzer.width));
+			if (this.series[point]++ == 0){
+				this.stashMin[point] = this.stashMax[point] = stash;
+				this.fieldMin[point] = this.fieldMax[point] = field;
+			} else {
+				this.stashMin[point] = Math.min(this.stashMin[point], stash);
+				this.stashMax[point] = Math.max(this.stashMax[point], stash);
+				this.fieldMin[point] = Math.min(this.fieldMin[point], field);
+				this.fieldMax[point] = Math.max(this.fieldMax[point], field);
+			}
+			this.stashLast[point] = stash;
+			this.fieldLast[point] = field;
+		}
+		// Read the number that ends at the cursor and move the cursor to its
+		// start. Returns 0 if there is none.
+		private int numberBefore(int[] cursor, int limit){
+			int i = cursor[0];
+			while (i > limit && this.bytes.get(i - 1) >= '0' && this.bytes.get(i - 1) <= '9')
+				--i;
+			int n = 0;
+			for (int j = i; j < cursor[0]; j++)
+				n = n * 10 + (this.bytes.get(j) - '0');
+			if (i > limit && this.bytes.get(i - 1) == '-'){
+				n = -n;
+				--i;
+			}
+			cursor[0] = i;
+			return n;
+		}
+		// Whether the text before the cursor is the given text, in which
+		// case the cursor moves to its start
+		private boolean endsWith(int[] cursor, byte[] text, int limit){
+			int from = cursor[0] - text.length;
+			if (from < limit)
+				return false;
+			for (int i = 0; i < text.length; i++)
+				if (this.bytes.get(from + i) != text[i])
+					return false;
+			cursor[0] = from;
+			return true;
+		}
+		// Index of a description, adding it the first time it is met
+		private int find(int from, int to){
+			ByteBuffer b = this.bytes;
+			int hash = 0;
+			for (int i = from; i < to; i++)
+				hash = 31 * hash + b.get(i);
+			int mask = this.slots.length - 1;
+			for (int slot = (hash ^ (hash >>> 16)) & mask;; slot = (slot + 1) & mask){
+				int index = this.slots[slot] - 1;
+				if (index < 0)
+					return this.add(slot, from, to);
+				byte[] key = this.keys[index];
+				if (key.length != to - from)
+					continue;
+				int i = 0;
+				while (i < key.length && key[i] == b.get(from + i))
+					++i;
+				if (i == key.length)
+					return index;
+			}
+		}
+		// Add a new description in an empty slot
+		private int add(int slot, int from, int to){
+			byte[] key = new byte[to - from];
+			for (int i = 0; i < key.length; i++)
+				key[i] = this.bytes.get(from + i);
+			if (this.size == this.keys.length){
+				this.keys = Arrays.copyOf(this.keys, this.size * 2);
+				this.counts = Arrays.copyOf(this.counts, this.size * 2);
+				this.sums = Arrays.copyOf(this.sums, this.size * 2);
+				this.bracketed = Arrays.copyOf(this.bracketed, this.size * 2);
+			}
+			int index = this.size++;
+			this.keys[index] = key;
+			this.slots[slot] = index + 1;
+			if (new String(key, StandardCharsets.US_ASCII).equals(LogAnalyzer.LATENCY))
+				this.latencyType = index;
+			// Keep the table at most half full
+			if (2 * this.size > this.slots.length){
+				this.slots = new int[this.slots.length * 2];
+				for (int k = 0; k < this.size; k++){
+					int hash = 0;
+					for (byte c : this.keys[k])
+						hash = 31 * hash + c;
+					int mask = this.slots.length - 1;
+					int s = (hash ^ (hash >>> 16)) & mask;
+					while (this.slots[s] != 0)
+						s = (s + 1) & mask;
+					this.slots[s] = k + 1;
+				}
+			}
+			return index;
+		}
+		// Add the totals of the chunk that follows this one in the log
+		void merge(Chunk later){
+			for (Map.Entry<String, long[]> e : later.types.entrySet()){
+				long[] t = this.types.get(e.getKey());
+				if (t == null)
+					this.types.put(e.getKey(), e.getValue().clone());
+				else
+					for (int i = 0; i < t.length; i++)
+						t[i] += e.getValue()[i];
+			}
+			this.latency.add(later.latency);
+			for (int i = 0; i < this.histogram.length; i++)
+				this.histogram[i] += later.histogram[i];
+			for (int p = 0; p < this.series.length; p++){
+				if (later.series[p] == 0)
+					continue;
+				if (this.series[p] == 0){
+					this.stashMin[p] = later.stashMin[p];
+					this.stashMax[p] = later.stashMax[p];
+					this.fieldMin[p] = later.fieldMin[p];
+					this.fieldMax[p] = later.fieldMax[p];
+				} else {
+					this.stashMin[p] = Math.min(this.stashMin[p], later.stashMin[p]);
+					this.stashMax[p] = Math.max(this.stashMax[p], later.stashMax[p]);
+					this.fieldMin[p] = Math.min(this.fieldMin[p], later.fieldMin[p]);
+					this.fieldMax[p] = Math.max(this.fieldMax[p], later.fieldMax[p]);
+				}
+				this.series[p] += later.series[p];
+				this.stashLast[p] = later.stashLast[p];
+				this.fieldLast[p] = later.fieldLast[p];
+			}
+			this.records += later.records;
+			this.malformed += later.malformed;
+			this.firstTime = Math.min(this.firstTime, later.firstTime);
+			this.lastTime = Math.max(this.lastTime, later.lastTime);
+			this.bytesRead += later.bytesRead;
+		}
+	}
+}
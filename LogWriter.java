@@ -0,0 +1,252 @@
+package pumpkins;
+import java.io.*;
+/**
+ * The LogWriter class takes log records off the event threads. Records are
+ * placed in a bounded ring buffer and a dedicated writer thread formats
+ * them in batches, writing each batch to the log file in one large
+ * buffered write and optionally echoing it to the console. Records can
+ * also, or instead, go to a binary EventJournal. When the buffer
+ * is full a producer either waits for room or drops its record; both are
+ * counted. A writer with no outputs discards records without a thread or
+ * a buffer. If the log file is a RollingLog, the writer thread starts its
+ * next segment between records when the current one is due to roll.
+ */
+public class LogWriter implements Runnable {
+	private final static int BATCH_CHARS = 1 << 16;
+	private final static String LINE_SEPARATOR = System.lineSeparator();
+	private final Writer out;
+	private final RollingLog segments; // The log file, if it rolls
+	private final PrintStream console;
+	private final EventJournal journal;
+	private final boolean dropWhenFull;
+	private final boolean discard; // No outputs, so records go nowhere
+	private final int[] types;
+	private final int[] timestamps;
+	private final String[] messages;
+	private final int[] stashes;
+	private final int[] fields;
+	private final int[] details;
+	private final Thread thread;
+	private int head;
+	private int size;
+	private boolean open;
+	private long dropped;
+	private long blocked;
+	/**
+	 * Create a log writer with room for capacity records. Any of the outputs
+	 * may be null to leave it out. Call start() before appending.
+	 */
+	public LogWriter(Writer out, PrintStream console, EventJournal journal,
+			int capacity, boolean dropWhenFull){
+		this.out = out;
+		this.segments = out instanceof RollingLog ? (RollingLog)out : null;
+		this.console = console;
+		this.journal = journal;
+		this.dropWhenFull = dropWhenFull;
+		this.discard = out == null && console == null && journal == null;
+		if (this.discard)
+			capacity = 1;
+		this.types = new int[capacity];
+		this.timestamps = new int[capacity];
+		this.messages = new String[capacity];
+		this.stashes = new int[capacity];
+		this.fields = new int[capacity];
+		this.details = new int[capacity];
+		this.thread = new Thread(this, "pumpkin-log");
+		this.head = 0;
+		this.size = 0;
+		this.open = true;
+		this.dropped = 0;
+		this.blocked = 0;
+	}
+	/**
+	 * Start the writer thread
+	 */
+	public void start(){
+		if (!this.discard)
+			this.thread.start();
+	}
+	/**
+	 * Whether records go anywhere. A writer with no outputs discards them,
+	 * so callers need not gather their contents.
+	 */
+	public boolean isEnabled(){
+		return !this.discard;
+	}
+	/**
+	 * Whether records are written as text, so callers need to supply the
+	 * message of an event record
+	 */
+	public boolean hasText(){
+		return this.out != null || this.console != null;
+	}
+	/**
+	 * Queue a record to be written. The type and detail are the event's
+	 * journal record type and detail value; the message may be null for
+	 * event records if hasText() is false. Records appended after close()
+	 * are ignored.
+	 */
+	public void append(int type, int timestamp, String message,
+			int stash, int field, int detail){
+		if (!this.discard)
+			this.queue(type, timestamp, message, stash, field, detail);
+	}
+	// Place a record in the buffer, waiting for room or dropping it if full
+	private synchronized void queue(int type, int timestamp, String message,
+			int stash, int field, int detail){
+		if (this.size == this.messages.length && this.open){
+			if (this.dropWhenFull){
+				++this.dropped;
+				return;
+			}
+			++this.blocked;
+			try {
+				while (this.size == this.messages.length && this.open)
+					this.wait();
+			} catch (InterruptedException ie){
+				ie.printStackTrace();
+				return;
+			}
+		}
+		if (!this.open)
+			return;
+		int i = (this.head + this.size) % this.messages.length;
+		this.types[i] = type;
+		this.timestamps[i] = timestamp;
+		this.messages[i] = message;
+		this.stashes[i] = stash;
+		this.fields[i] = field;
+		this.details[i] = detail;
+		if (this.size++ == 0)
+			this.notifyAll();
+	}
+	/**
+	 * Write out every queued record, then close the log file and stop the
+	 * writer thread
+	 */
+	public void close(){
+		if (this.discard)
+			return;
+		synchronized(this){
+			this.open = false;
+			this.notifyAll();
+		}
+		try {
+			this.thread.join();
+		} catch (InterruptedException ie){
+			ie.printStackTrace();
+		}
+	}
+	/**
+	 * Get number of records dropped because the buffer was full
+	 */
+	public synchronized long getDroppedCount(){
+		return this.dropped;
+	}
+	/**
+	 * Get number of times a producer had to wait for room in the buffer
+	 */
+	public synchronized long getBlockedCount(){
+		return this.blocked;
+	}
+	/**
+	 * Drain the buffer in batches until closed
+	 */
+	public void run(){
+		StringBuilder batch = new StringBuilder(LogWriter.BATCH_CHARS);
+		while (true){
+			int first, count;
+			synchronized(this){
+				try {
+					while (this.size == 0 && this.open)
+						this.wait();
+				} catch (InterruptedException ie){
+					ie.printStackTrace();
+				}
+				if (this.size == 0)
+					break;
+				first = this.head;
+				count = this.size;
+			}
+			// Producers only fill free slots, so the claimed records can be
+			// formatted without holding the lock
+			batch.setLength(0);
+			for (int n = 0; n < count; n++){
+				int i = (first + n) % this.messages.length;
+				if (this.segments != null)
+					this.roll(batch, this.timestamps[i]);
+				if (this.hasText())
+					LogWriter.format(batch, this.timestamps[i], this.messages[i],
+							this.stashes[i], this.fields[i]);
+				if (this.journal != null)
+					this.journal(i);
+				this.messages[i] = null;
+			}
+			synchronized(this){
+				this.head = (first + count) % this.messages.length;
+				this.size -= count;
+				this.notifyAll();
+			}
+			this.write(batch);
+		}
+		try {
+			if (this.out != null)
+				this.out.close();
+			if (this.journal != null)
+				this.journal.close();
+		} catch (IOException ioe){
+			ioe.printStackTrace();
+		}
+		if (this.console != null)
+			this.console.flush();
+	}
+	/**
+	 * Format a log line as "timestamp: message - stash = n - field = n"
+	 */
+	static void format(StringBuilder line, int timestamp, String message,
+			int stash, int field){
+		line.append(timestamp).append(": ")
+			.append(message)
+			.append(" - stash = ").append(stash)
+			.append(" - field = ").append(field)
+			.append(LogWriter.LINE_SEPARATOR);
+	}
+	// Before a record is added to the batch, write out the batch and start
+	// a new log segment if the record is due in one
+	private void roll(StringBuilder batch, int timestamp){
+		try {
+			if (this.segments.isDue(timestamp, batch.length())){
+				this.write(batch);
+				batch.setLength(0);
+				this.segments.roll();
+			}
+		} catch (IOException ioe){
+			ioe.printStackTrace();
+		}
+		this.segments.record(timestamp);
+	}
+	// Write a record to the journal
+	private void journal(int i){
+		try {
+			if (this.types[i] == EventJournal.MESSAGE)
+				this.journal.writeMessage(this.timestamps[i], this.messages[i],
+						this.stashes[i], this.fields[i]);
+			else
+				this.journal.write(this.types[i], this.timestamps[i],
+						this.stashes[i], this.fields[i], this.details[i]);
+		} catch (IOException ioe){
+			ioe.printStackTrace();
+		}
+	}
+	// Send a formatted batch to each output
+	private void write(StringBuilder batch){
+		try {
+			if (this.out != null)
+				this.out.append(batch);
+		} catch (IOException ioe){
+			ioe.printStackTrace();
+		}
+		if (this.console != null)
+			this.console.append(batch);
+	}
+}
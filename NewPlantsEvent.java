@@ -0,0 +1,36 @@
+package pumpkins;
+/**
+ * The NewPlantsEvent occurs when a number of new plants go to live in a
+ * Patch's unripe collection at once, as when the patch is first planted or
+ * Jack sows the seeds of a pumpkin. The patch grows them in bulk, and the
+ * planting is logged as a single line.
+ */
+public class NewPlantsEvent extends PumpkinEvent {
+	final static String EVENT_DESCRIPTION = "New plants";
+	private final Patch patch;
+	private final int count;
+	/**
+	 * Initialize an event that grows count plants in the patch
+	 */
+	public NewPlantsEvent(Patch patch, int count){
+		this.patch = patch;
+		this.count = count;
+		this.silent = false;
+	}
+	/**
+	 * Execute event
+	 */
+	protected void perform(){
+		this.patch.plant(this.count);
+	}
+	// Number of plants grown, for the journal
+	int getCount(){
+		return this.count;
+	}
+	/**
+	 * Display event as String for log
+	 */
+	public String toString(){
+		return NewPlantsEvent.EVENT_DESCRIPTION + " (" + this.count + ")";
+	}
+}
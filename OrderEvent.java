@@ -5,7 +5,7 @@ package pumpkins;
  * OrderGenerator can place orders.
  */
 public class OrderEvent extends PumpkinEvent {
-	private final static String EVENT_DESCRIPTION = "Order placed"; 
+	final static String EVENT_DESCRIPTION = "Order placed"; 
 	private final OrderGenerator generator;
 	/**
 	 * Initialize the event
@@ -17,7 +17,7 @@ public class OrderEvent extends PumpkinEvent {
 	/**
 	 * Execute event
 	 */
-	public void run(){
+	protected void perform(){
 		boolean completed = this.generator.placeOrder();
 		if (!completed)
 			this.silent = true;
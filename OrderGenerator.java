@@ -4,10 +4,12 @@ import java.util.*;
  * The OrderGenerator class creates pumpkin orders for Jack to fulfill.
  */
 public class OrderGenerator {
-	private final static int MEAN_ORDER_INTERVAL = 120;
 	private final static int DELAY = 100000;
 	private final Program program;
 	private final Jack jack;
+	private final int meanInterval;
+	private final RandomStream random;
+	private final OrderEvent event; // Reused for every order
 	/**
 	 * Create an instance of OrderGenerator for the given Program and Jack
 	 * objects
@@ -15,12 +17,18 @@ public class OrderGenerator {
 	public OrderGenerator(Program program, Jack jack){
 		this.program = program;
 		this.jack = jack;
-		
-		//Set first timer to begin creating orders
-		int duration = this.program.randomUniform(OrderGenerator.MEAN_ORDER_INTERVAL);
+		this.meanInterval = program.getConfig().getOrderInterval();
+		this.random = program.newRandomStream();
+		this.event = new OrderEvent(this);
+	}
+	/**
+	 * Set the first timer to begin creating orders. A program restored from
+	 * a checkpoint does not call this; its pending order timer is restored.
+	 */
+	public void start(){
+		int duration = this.random.exponential(this.meanInterval);
 		duration += OrderGenerator.DELAY;
-		PumpkinEvent event = new OrderEvent(this);
-		this.program.setTimer(event, duration);
+		this.program.setTimer(this.event, duration);
 	}
 	// Place a new pumpkin order for Jack
 	public boolean placeOrder(){
@@ -33,8 +41,11 @@ public class OrderGenerator {
 	}
 	// Set timer for next order
 	private void setNextTimer(){
-		int duration = this.program.randomUniform(OrderGenerator.MEAN_ORDER_INTERVAL);
-		PumpkinEvent event = new OrderEvent(this);
-		this.program.setTimer(event, duration);
+		int duration = this.random.exponential(this.meanInterval);
+		this.program.setTimer(this.event, duration);
+	}
+	// The event that places the next order. Only one is pending at a time.
+	OrderEvent getEvent(){
+		return this.event;
 	}
 }
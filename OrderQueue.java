@@ -0,0 +1,143 @@
+package pumpkins;
+import java.util.*;
+import java.util.concurrent.atomic.*;
+/**
+ * The OrderQueue class is Jack's backlog of open orders, oldest first. Any
+ * number of threads may add orders at once without a lock: each order is
+ * linked in through a field of its own with a single atomic swap, so adding
+ * one allocates nothing and costs the same however long the backlog grows.
+ * Orders are taken off the front in constant time each, up to a given
+ * number per call. Only one thread may take orders at a time; Jack takes
+ * them while holding his own lock.
+ *
+ * The queue always holds at least one order, so adding never has to check
+ * for an empty queue. While it has no open orders a placeholder order that
+ * is never handed out takes that place.
+ */
+public class OrderQueue implements Iterable<Jack.Order> {
+	private final Jack.Order stub; // Placeholder while the queue is empty
+	private final AtomicReference<Jack.Order> tail; // Last order added
+	private final AtomicInteger size;
+	private Jack.Order head; // Next order to take, or the placeholder
+	/**
+	 * Create an empty queue for Jack's orders
+	 */
+	public OrderQueue(Jack jack){
+		this.stub = jack.new Order(0);
+		this.tail = new AtomicReference<Jack.Order>(this.stub);
+		this.size = new AtomicInteger();
+		this.head = this.stub;
+	}
+	/**
+	 * Add an order to the back of the queue. Safe to call from any thread.
+	 */
+	public void add(Jack.Order order){
+		// Counted first, so the queue never looks emptier than it is
+		this.size.incrementAndGet();
+		this.link(order);
+	}
+	/**
+	 * Take the order at the front of the queue, or null if there is none.
+	 * An order whose add() has not yet finished may not be seen.
+	 */
+	public Jack.Order poll(){
+		Jack.Order order = this.next();
+		if (order != null)
+			this.size.decrementAndGet();
+		return order;
+	}
+	/**
+	 * Take up to max orders from the front of the queue and add them to the
+	 * list, oldest first. Returns the number taken.
+	 */
+	public int drain(List<Jack.Order> into, int max){
+		int taken = 0;
+		while (taken < max){
+			Jack.Order order = this.next();
+			if (order == null)
+				break;
+			into.add(order);
+			++taken;
+		}
+		if (taken > 0)
+			this.size.addAndGet(-taken);
+		return taken;
+	}
+	/**
+	 * Get the number of orders in the queue, counting any being added
+	 */
+	public int size(){
+		return this.size.get();
+	}
+	/**
+	 * Whether there are no orders in the queue or being added
+	 */
+	public boolean isEmpty(){
+		return this.size.get() == 0;
+	}
+	/**
+	 * Remove every order. Call only while no other thread uses the queue.
+	 */
+	public void clear(){
+		this.stub.next = null;
+		this.head = this.stub;
+		this.tail.set(this.stub);
+		this.size.set(0);
+	}
+	/**
+	 * Iterate over the orders from front to back without taking them. Call
+	 * only while no other thread uses the queue, e.g. for a checkpoint.
+	 */
+	public Iterator<Jack.Order> iterator(){
+		return new Iterator<Jack.Order>(){
+			private Jack.Order next = OrderQueue.this.skipStub(OrderQueue.this.head);
+			public boolean hasNext(){
+				return this.next != null;
+			}
+			public Jack.Order next(){
+				if (this.next == null)
+					throw new NoSuchElementException();
+				Jack.Order order = this.next;
+				this.next = OrderQueue.this.skipStub(order.next);
+				return order;
+			}
+		};
+	}
+	// Unlink the order at the front without counting it as taken. The
+	// order keeps its link until it is next added.
+	private Jack.Order next(){
+		Jack.Order head = this.head;
+		Jack.Order next = head.next;
+		if (head == this.stub){
+			if (next == null)
+				return null;
+			this.head = head = next;
+			next = next.next;
+		}
+		if (next != null){
+			this.head = next;
+			return head;
+		}
+		// The front order is the last one unless an add is part way through
+		if (head != this.tail.get())
+			return null;
+		// Put the placeholder behind it, so it can be taken like any other
+		this.link(this.stub);
+		next = head.next;
+		if (next == null)
+			return null;
+		this.head = next;
+		return head;
+	}
+	// Link an order in after the current last one. The order is reachable
+	// from the front once the previous last order points to it.
+	private void link(Jack.Order order){
+		order.next = null;
+		Jack.Order previous = this.tail.getAndSet(order);
+		previous.next = order;
+	}
+	// The given order, or the one after it if it is the placeholder
+	private Jack.Order skipStub(Jack.Order order){
+		return order == this.stub ? order.next : order;
+	}
+}
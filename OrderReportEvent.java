@@ -0,0 +1,28 @@
+package pumpkins;
+/**
+ * The OrderReportEvent occurs at regular intervals while the program's clock
+ * runs. It logs statistics of the orders completed since the previous report
+ * and sets its own timer again for the next one.
+ */
+public class OrderReportEvent extends PumpkinEvent {
+	private final Program program;
+	private final Jack jack;
+	/**
+	 * Create an event
+	 */
+	public OrderReportEvent(Program program, Jack jack){
+		this.program = program;
+		this.jack = jack;
+		this.silent = true;
+	}
+	/**
+	 * Execute event
+	 */
+	protected void perform(){
+		this.program.log(this.jack.orderWindowReport());
+		if (this.program.timerExpired())
+			return;
+		int interval = this.program.getConfig().getLatencyWindow();
+		this.program.setTimer(this, interval);
+	}
+}
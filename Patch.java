@@ -1,96 +1,143 @@
 package pumpkins;
+import java.io.*;
 import java.util.*;
 /**
- * The Patch class maintains collections of ripe and unripe pumpkin plants.
- * Ripe pumpkins may be picked, and plants may be pulled and used for compost.
+ * The Patch class is a field of pumpkin plants that Jack tends. Ripe
+ * pumpkins may be picked, and plants may be pulled and used for compost.
+ * PlantPatch keeps each plant as an object; ArrayPatch keeps plants as
+ * integer ids backed by primitive arrays, for fields of many millions of
+ * plants. ShardedPatch splits the field into independently locked patches.
+ * In a single-threaded (--deterministic) program no other thread ever
+ * touches a patch, so the locks on its event paths are skipped.
  */
-public class Patch {
-	public final static int SEEDS_PER_PLANT = 4;
-	private final static int PLANTS_BEGIN = 1000;
-	private final static int PLANTS_TO_COMPOST = 5;
-	private final Program program;
-	private final Jack jack;
-	private final List<Plant> unripe;
-	private final List<Plant> ripe;
-
+public abstract class Patch {
+	protected final Program program;
+	protected final Jack jack;
+	protected final int plantsBegin;
+	private final int plantsToCompost;
+	private final int ripenInterval;
+	protected final RandomStream random;
+	protected final boolean singleThreaded; // Locks are skipped if set
+	private Patch owner;
+	private PumpkinEvent[] timerEvents; // Timers held back by a bulk planting
+	private int[] timerDurations;
+	private int timerCount;
 	/**
 	 * Create a new pumpkin patch
 	 */
-	public Patch(Program program, Jack jack){
+	protected Patch(Program program, Jack jack){
+		this(program, jack, program.getConfig().getInitialPlants());
+	}
+	/**
+	 * Create a new pumpkin patch expected to start with the given number of
+	 * plants
+	 */
+	protected Patch(Program program, Jack jack, int plantsBegin){
 		this.program = program;
 		this.jack = jack;
-		this.unripe = new ArrayList<Plant>();
-		this.ripe = new ArrayList<Plant>();
+		this.plantsBegin = plantsBegin;
+		this.plantsToCompost = program.getConfig().getPlantsToCompost();
+		this.ripenInterval = program.getConfig().getRipenInterval();
+		this.random = program.newRandomStream();
+		this.singleThreaded = program.isSingleThreaded();
+		this.owner = this;
+		this.timerEvents = new PumpkinEvent[16];
+		this.timerDurations = new int[16];
+		this.timerCount = 0;
 	}
 	/**
-	 * Add initial quantity of plants to the patch
+	 * Create the kind of patch chosen in the program's configuration
 	 */
-	public void setup(){
-		for (int i = 0; i < Patch.PLANTS_BEGIN; i++)
-			this.program.processEvent(new NewPlantEvent(this.program, this, this.jack));
+	public static Patch create(Program program, Jack jack){
+		int shards = program.getConfig().getPatchShards();
+		if (shards > 1)
+			return new ShardedPatch(program, jack, shards);
+		return Patch.createShard(program, jack, program.getConfig().getInitialPlants());
+	}
+	// Create an unsharded patch of the configured kind
+	static Patch createShard(Program program, Jack jack, int plantsBegin){
+		if (program.getConfig().isArrayPlants())
+			return new ArrayPatch(program, jack, plantsBegin);
+		return new PlantPatch(program, jack, plantsBegin);
 	}
 	/**
-	 * Add new plant to patch
+	 * Add initial quantity of plants to the patch, as a single bulk planting
 	 */
-	public void add(Plant plant){
-		synchronized(this.unripe){
-			this.unripe.add(plant);
-		}
+	public void setup(){
+		if (this.plantsBegin > 0)
+			this.program.processEvent(new NewPlantsEvent(this, this.plantsBegin));
 	}
+	/**
+	 * Grow a new unripe plant in the patch
+	 */
+	public abstract void plant();
+	/**
+	 * Grow a number of new unripe plants at once. Storage is sized for them
+	 * up front, the plants are added under one hold of the patch's locks,
+	 * and their ripening timers are set together.
+	 */
+	public abstract void plant(int count);
 	/**
 	 * Get number of ripe plants in patch
 	 */
-	public int getPumpkinCount(){
-		synchronized(this.ripe){
-			return this.ripe.size();
-		}
-	}
+	public abstract int getPumpkinCount();
+	// Get number of unripe plants in patch
+	abstract int getUnripeCount();
 	/**
-	 * Pick a number of ripe plants from the patch
+	 * Pick a number of ripe plants from the patch. Returns the number
+	 * picked, which is less than quantity if the patch runs out.
 	 */
-	public void pick(int quantity){
-		List<Plant> picked = new ArrayList<Plant>(quantity);
-		synchronized(this.ripe){
-			for (int i = 0; i < quantity; i++)
-				picked.add(this.ripe.remove(0));
-		}
-		synchronized(this.unripe){
-			for(Plant p : picked){ 
-				p.pick();
-				this.unripe.add(p);
-			}
-		}
-	}
+	public abstract int pick(int quantity);
 	/**
 	 * Choose some plants from the patch to use for compost starting
 	 * with the unripe plants
 	 */
 	public void compost(){
-		int count = Patch.PLANTS_TO_COMPOST;
-		synchronized(this.unripe){
-			while (this.unripe.size() > 0 && count > 0){
-				this.unripe.remove(0);
-				count--;
-			}
-		}
-		if (count == 0)
-			return;
-		synchronized(this.ripe){
-			while (this.ripe.size() > 0 && count > 0){
-				this.ripe.remove(0);
-				count--;
-			}
-		}
+		int count = this.compostUnripe(this.plantsToCompost);
+		if (count < this.plantsToCompost)
+			this.compostRipe(this.plantsToCompost - count);
 	}
-	// Move plants from the unripe collection to the ripe collection
-	void ripen(Plant plant){
-		boolean found = false;
-		synchronized(this.unripe){
-			found = this.unripe.remove(plant);
+	// Pull up to count unripe plants for compost. Returns the number pulled.
+	abstract int compostUnripe(int count);
+	// Pull up to count ripe plants for compost. Returns the number pulled.
+	abstract int compostRipe(int count);
+	// Write the patch's plants to a checkpoint. Timers for plants yet to
+	// ripen are written with the clock's other timers.
+	abstract void save(DataOutputStream out) throws IOException;
+	// Read back the plants written by save() into a new, empty patch
+	abstract void restore(DataInputStream in) throws IOException;
+	// Get the unsharded patches that make up this one
+	Patch[] getShards(){
+		return new Patch[] { this };
+	}
+	// Hold back a timer for setHeldTimers(), so that a bulk planting sets
+	// all its timers at once. Caller holds the patch's unripe lock.
+	void holdTimer(PumpkinEvent event, int duration){
+		if (this.timerCount == this.timerEvents.length){
+			this.timerEvents = Arrays.copyOf(this.timerEvents, this.timerCount * 2);
+			this.timerDurations = Arrays.copyOf(this.timerDurations, this.timerCount * 2);
 		}
-		if (found)
-			synchronized(this.ripe){
-				this.ripe.add(plant);
-			}
+		this.timerEvents[this.timerCount] = event;
+		this.timerDurations[this.timerCount++] = duration;
+	}
+	// Set the timers held back by holdTimer(). Caller holds the unripe lock.
+	void setHeldTimers(){
+		this.program.setTimers(this.timerEvents, this.timerDurations, this.timerCount);
+		Arrays.fill(this.timerEvents, 0, this.timerCount, null);
+		this.timerCount = 0;
+	}
+	// Draw the time until a newly planted or picked plant ripens
+	int ripenDuration(){
+		return this.random.gaussian(this.ripenInterval,
+				Plant.MEAN_RIPEN_DEVIATION);
+	}
+	// Tell Jack that pumpkins have ripened. A shard tells him about the
+	// whole ShardedPatch it belongs to.
+	void notifyJack(){
+		this.jack.patchReady(this.owner);
+	}
+	// Make this patch a shard of a larger one
+	void setOwner(Patch owner){
+		this.owner = owner;
 	}
 }
@@ -3,22 +3,34 @@ package pumpkins;
  * The Plant class represents a plant in a pumpkin patch
  */
 public class Plant {
-	private final static int MEAN_RIPEN_INTERVAL = 50000;
-	private final static int MEAN_RIPEN_DEVIATION = 10000;
+	final static int MEAN_RIPEN_DEVIATION = 10000;
 	private final Program program;
-	private final Patch patch;
+	private final PlantPatch patch;
 	private final Jack jack;
 	private volatile boolean ripe;
+	int index; // Position in the patch's ripe or unripe PlantList
 	/**
 	 * Create a new plant in the given patch, with a Jack to notify
 	 * when it ripens
 	 */
-	public Plant(Program program, Patch patch, Jack jack){
+	public Plant(Program program, PlantPatch patch, Jack jack){
 		this.program = program;
 		this.patch = patch;
 		this.jack = jack;
+		this.index = -1;
 		this.pick();
 	}	
+	/**
+	 * Recreate a plant from a checkpoint. No ripening timer is set; the
+	 * checkpoint restores the plant's pending timer, if it had one.
+	 */
+	Plant(Program program, PlantPatch patch, Jack jack, boolean ripe){
+		this.program = program;
+		this.patch = patch;
+		this.jack = jack;
+		this.index = -1;
+		this.ripe = ripe;
+	}
 	/**
 	 * Change from unripe to ripe
 	 */
@@ -29,17 +41,11 @@ public class Plant {
 	 * notify Jack when ripe (via Patch)
 	 */	
 	void notifyJack(){
-		this.jack.patchReady(patch);
+		this.patch.notifyJack();
 	}
-	// Pick ripe pumpkin from patch and set new timer to ripen again
+	// Pick ripe pumpkin from patch and schedule it to ripen again
 	void pick(){
 		this.ripe = false;
-		if (this.program.timerExpired())
-			return;
-		int duration = this.program.randomGaussian(
-				Plant.MEAN_RIPEN_INTERVAL, Plant.MEAN_RIPEN_DEVIATION);
-		PumpkinEvent event = 
-				new RipenEvent(this.program, this, this.patch, this.jack);
-		this.program.setTimer(event, duration);
+		this.patch.scheduleRipening(this);
 	}
 }
@@ -0,0 +1,82 @@
+package pumpkins;
+import java.util.*;
+/**
+ * The PlantList class is an unordered collection of plants in which adding
+ * a plant, removing a given plant and taking plants off the end are all
+ * constant time. Each plant records its position in the list it belongs
+ * to, and a removed plant's place is filled by the last plant in the list.
+ * A plant may belong to only one PlantList at a time. PlantList is not
+ * synchronized.
+ */
+public class PlantList {
+	private Plant[] plants;
+	private int size;
+	/**
+	 * Create an empty list with room for capacity plants
+	 */
+	public PlantList(int capacity){
+		this.plants = new Plant[Math.max(capacity, 1)];
+		this.size = 0;
+	}
+	/**
+	 * Add a plant to the list
+	 */
+	public void add(Plant plant){
+		if (this.size == this.plants.length)
+			this.plants = Arrays.copyOf(this.plants, this.size * 2);
+		this.plants[this.size] = plant;
+		plant.index = this.size++;
+	}
+	/**
+	 * Make room for the list to hold at least capacity plants
+	 */
+	public void ensureCapacity(int capacity){
+		if (capacity > this.plants.length)
+			this.plants = Arrays.copyOf(this.plants,
+					Math.max(capacity, this.plants.length * 2));
+	}
+	/**
+	 * Remove a plant from the list. Returns false if it was not in the list.
+	 */
+	public boolean remove(Plant plant){
+		int i = plant.index;
+		if (i < 0 || i >= this.size || this.plants[i] != plant)
+			return false;
+		Plant last = this.plants[--this.size];
+		this.plants[i] = last;
+		last.index = i;
+		this.plants[this.size] = null;
+		plant.index = -1;
+		return true;
+	}
+	/**
+	 * Remove and return the last plant in the list, or null if it is empty
+	 */
+	public Plant removeLast(){
+		if (this.size == 0)
+			return null;
+		Plant plant = this.plants[--this.size];
+		this.plants[this.size] = null;
+		plant.index = -1;
+		return plant;
+	}
+	/**
+	 * Get the plant at a position in the list
+	 */
+	public Plant get(int index){
+		return this.plants[index];
+	}
+	/**
+	 * Check whether a plant is in the list
+	 */
+	public boolean contains(Plant plant){
+		int i = plant.index;
+		return i >= 0 && i < this.size && this.plants[i] == plant;
+	}
+	/**
+	 * Get number of plants in the list
+	 */
+	public int size(){
+		return this.size;
+	}
+}
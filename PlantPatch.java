@@ -0,0 +1,373 @@
+package pumpkins;
+import java.io.*;
+import java.util.*;
+/**
+ * The PlantPatch class maintains collections of ripe and unripe Plant
+ * objects. Both collections are PlantLists, so moving, picking and
+ * composting plants costs the same however large the patch grows. Plants
+ * due to ripen at the same time share a single RipenPlantsEvent and clock
+ * timer, so a tick in which many plants ripen takes each lock once and
+ * notifies Jack once.
+ */
+public class PlantPatch extends Patch {
+	private final static int MAX_SCHEDULE_SLOTS = 1 << 17;
+	private final PlantList unripe;
+	private final PlantList ripe;
+	private final RipenPlantsEvent[] schedule;
+	private RipenPlantsEvent spareBatches; // Ripened, for reuse; schedule lock
+	private final List<Plant> picked; // Reused by pick(), which locks it
+
+	/**
+	 * Create a new pumpkin patch
+	 */
+	public PlantPatch(Program program, Jack jack){
+		this(program, jack, program.getConfig().getInitialPlants());
+	}
+	/**
+	 * Create a new pumpkin patch expected to start with the given number of
+	 * plants
+	 */
+	public PlantPatch(Program program, Jack jack, int plantsBegin){
+		super(program, jack, plantsBegin);
+		this.unripe = new PlantList(this.plantsBegin);
+		this.ripe = new PlantList(this.plantsBegin);
+		// Roughly a slot per plant, as few deadlines are shared in a small patch
+		int slots = Math.min(Math.max(this.plantsBegin, 16), PlantPatch.MAX_SCHEDULE_SLOTS);
+		this.schedule = new RipenPlantsEvent[Integer.highestOneBit(slots - 1) << 1];
+		this.picked = new ArrayList<Plant>();
+	}
+	/**
+	 * Grow a new unripe plant in the patch
+	 */
+	public void plant(){
+		this.add(new Plant(this.program, this, this.jack));
+	}
+	/**
+	 * Grow a number of new unripe plants at once
+	 */
+	public void plant(int count){
+		if (this.singleThreaded)
+			this.plantUnripe(count);
+		else {
+			synchronized(this.unripe){
+				this.plantUnripe(count);
+			}
+		}
+	}
+	/**
+	 * Add new plant to patch
+	 */
+	public void add(Plant plant){
+		if (this.singleThreaded)
+			this.unripe.add(plant);
+		else {
+			synchronized(this.unripe){
+				this.unripe.add(plant);
+			}
+		}
+	}
+	/**
+	 * Get number of ripe plants in patch
+	 */
+	public int getPumpkinCount(){
+		if (this.singleThreaded)
+			return this.ripe.size();
+		synchronized(this.ripe){
+			return this.ripe.size();
+		}
+	}
+	// Get number of unripe plants in patch
+	int getUnripeCount(){
+		if (this.singleThreaded)
+			return this.unripe.size();
+		synchronized(this.unripe){
+			return this.unripe.size();
+		}
+	}
+	/**
+	 * Pick a number of ripe plants from the patch
+	 */
+	public int pick(int quantity){
+		if (this.singleThreaded)
+			return this.pickRipe(quantity);
+		synchronized(this.picked){
+			return this.pickRipe(quantity);
+		}
+	}
+	// Pull up to count unripe plants for compost
+	int compostUnripe(int count){
+		if (this.singleThreaded)
+			return PlantPatch.pull(this.unripe, count);
+		synchronized(this.unripe){
+			return PlantPatch.pull(this.unripe, count);
+		}
+	}
+	// Pull up to count ripe plants for compost
+	int compostRipe(int count){
+		if (this.singleThreaded)
+			return PlantPatch.pull(this.ripe, count);
+		synchronized(this.ripe){
+			return PlantPatch.pull(this.ripe, count);
+		}
+	}
+	// Write the number of unripe and ripe plants. Plants carry no state of
+	// their own, so their ids are their positions in the lists.
+	void save(DataOutputStream out) throws IOException {
+		out.writeInt(this.unripe.size());
+		out.writeInt(this.ripe.size());
+	}
+	// Recreate the plants counted by save(), without ripening timers
+	void restore(DataInputStream in) throws IOException {
+		int unripe = in.readInt();
+		int ripe = in.readInt();
+		for (int i = 0; i < unripe; i++)
+			this.unripe.add(new Plant(this.program, this, this.jack, false));
+		for (int i = 0; i < ripe; i++)
+			this.ripe.add(new Plant(this.program, this, this.jack, true));
+	}
+	// Get a plant's id in a checkpoint: its position among the unripe
+	// plants, then the ripe ones, or -1 if it has been composted
+	int idOf(Plant plant){
+		if (this.unripe.contains(plant))
+			return plant.index;
+		if (this.ripe.contains(plant))
+			return this.unripe.size() + plant.index;
+		return -1;
+	}
+	// Find the plant with a checkpoint id. A composted plant, which only
+	// survives in its ripening timer, is recreated outside the patch.
+	Plant plantOf(int id){
+		if (id < 0)
+			return new Plant(this.program, this, this.jack, false);
+		if (id < this.unripe.size())
+			return this.unripe.get(id);
+		return this.ripe.get(id - this.unripe.size());
+	}
+	// Move a plant from the unripe collection to the ripe collection, for a
+	// RipenEvent restored from an older checkpoint
+	void ripen(Plant plant){
+		boolean found;
+		if (this.singleThreaded)
+			found = this.unripe.remove(plant);
+		else {
+			synchronized(this.unripe){
+				found = this.unripe.remove(plant);
+			}
+		}
+		if (!found)
+			return;
+		if (this.singleThreaded)
+			this.ripe.add(plant);
+		else {
+			synchronized(this.ripe){
+				this.ripe.add(plant);
+			}
+		}
+	}
+	// Move a batch of plants from the unripe collection to the ripe
+	// collection. Plants composted since the batch was scheduled are
+	// skipped, and the batch is left holding the plants that did ripen.
+	void ripen(RipenPlantsEvent batch){
+		this.unschedule(batch);
+		int ripened;
+		if (this.singleThreaded)
+			ripened = this.removeUnripe(batch);
+		else {
+			synchronized(this.unripe){
+				ripened = this.removeUnripe(batch);
+			}
+		}
+		Arrays.fill(batch.plants, ripened, batch.size, null);
+		batch.size = ripened;
+		if (ripened == 0)
+			return;
+		if (this.singleThreaded)
+			this.addRipe(batch, ripened);
+		else {
+			synchronized(this.ripe){
+				this.addRipe(batch, ripened);
+			}
+		}
+		this.notifyJack();
+	}
+	// Choose when a plant will ripen and add it to the batch for that time,
+	// creating the batch and its timer if it is the first
+	void scheduleRipening(Plant plant){
+		this.scheduleRipening(plant, false);
+	}
+	// Schedule a plant's ripening, holding back a new batch's timer for
+	// setHeldTimers() if hold is set. Caller holds the unripe lock to hold.
+	private void scheduleRipening(Plant plant, boolean hold){
+		if (this.program.timerExpired())
+			return;
+		int duration = Math.max(0, this.ripenDuration());
+		int deadline = this.program.getTimestamp() + duration;
+		RipenPlantsEvent created;
+		if (this.singleThreaded)
+			created = this.addToBatch(plant, deadline);
+		else {
+			synchronized(this.schedule){
+				created = this.addToBatch(plant, deadline);
+			}
+		}
+		if (created == null)
+			return;
+		if (hold)
+			this.holdTimer(created, duration);
+		else
+			this.program.setTimer(created, duration);
+	}
+	// Recreate a checkpointed batch and put it back in the schedule. The
+	// caller restores its timer.
+	RipenPlantsEvent restoreBatch(int deadline, Plant[] plants){
+		RipenPlantsEvent batch = new RipenPlantsEvent(this, deadline);
+		batch.plants = plants.length == 0 ? batch.plants : plants;
+		batch.size = plants.length;
+		synchronized(this.schedule){
+			int slot = deadline & (this.schedule.length - 1);
+			batch.next = this.schedule[slot];
+			this.schedule[slot] = batch;
+		}
+		return batch;
+	}
+	// Keep a batch that has ripened, been counted and logged for reuse,
+	// without holding on to its plants
+	void recycle(RipenPlantsEvent batch){
+		Arrays.fill(batch.plants, 0, batch.size, null);
+		if (this.singleThreaded){
+			batch.next = this.spareBatches;
+			this.spareBatches = batch;
+		} else {
+			synchronized(this.schedule){
+				batch.next = this.spareBatches;
+				this.spareBatches = batch;
+			}
+		}
+	}
+	// Take a batch that is due out of the schedule
+	private void unschedule(RipenPlantsEvent batch){
+		if (this.singleThreaded)
+			this.removeBatch(batch);
+		else {
+			synchronized(this.schedule){
+				this.removeBatch(batch);
+			}
+		}
+	}
+	// Add count new plants to the unripe list, holding back the timers of
+	// their batches. Caller holds the unripe lock.
+	private void plantUnripe(int count){
+		this.unripe.ensureCapacity(this.unripe.size() + count);
+		for (int i = 0; i < count; i++){
+			Plant plant = new Plant(this.program, this, this.jack, false);
+			this.unripe.add(plant);
+			this.scheduleRipening(plant, true);
+		}
+		this.setHeldTimers();
+	}
+	// Move up to quantity ripe plants back to the unripe list, each picked
+	// and due to ripen again. Caller holds the picked lock.
+	private int pickRipe(int quantity){
+		List<Plant> picked = this.picked;
+		if (this.singleThreaded)
+			this.removeRipe(picked, quantity);
+		else {
+			synchronized(this.ripe){
+				this.removeRipe(picked, quantity);
+			}
+		}
+		if (this.singleThreaded)
+			this.replant(picked);
+		else {
+			synchronized(this.unripe){
+				this.replant(picked);
+			}
+		}
+		int count = picked.size();
+		picked.clear();
+		return count;
+	}
+	// Take up to quantity plants off the ripe list. Caller holds
+	// the ripe lock.
+	private void removeRipe(List<Plant> picked, int quantity){
+		for (int i = 0; i < quantity && this.ripe.size() > 0; i++)
+			picked.add(this.ripe.removeLast());
+	}
+	// Pick each plant and put it back on the unripe list. Caller holds the
+	// unripe lock.
+	private void replant(List<Plant> picked){
+		for (int i = 0; i < picked.size(); i++){
+			Plant p = picked.get(i);
+			p.pick();
+			this.unripe.add(p);
+		}
+	}
+	// Take a batch's plants that are still unripe off the unripe list,
+	// moving them to the front of the batch. Returns how many. Caller
+	// holds the unripe lock.
+	private int removeUnripe(RipenPlantsEvent batch){
+		int ripened = 0;
+		for (int i = 0; i < batch.size; i++){
+			Plant plant = batch.plants[i];
+			if (this.unripe.remove(plant)){
+				plant.ripen();
+				batch.plants[ripened++] = plant;
+			}
+		}
+		return ripened;
+	}
+	// Take up to count plants off the end of a list. Returns how many.
+	// Caller holds the list's lock.
+	private static int pull(PlantList plants, int count){
+		int pulled = 0;
+		while (plants.size() > 0 && pulled < count){
+			plants.removeLast();
+			pulled++;
+		}
+		return pulled;
+	}
+	// Add the first count plants of a batch to the ripe list. Caller holds
+	// the ripe lock.
+	private void addRipe(RipenPlantsEvent batch, int count){
+		for (int i = 0; i < count; i++)
+			this.ripe.add(batch.plants[i]);
+	}
+	// Add a plant to the batch due at deadline. Returns the batch if it
+	// is new, and so needs a timer, or null. Caller holds the schedule
+	// lock.
+	private RipenPlantsEvent addToBatch(Plant plant, int deadline){
+		RipenPlantsEvent created = null;
+		int slot = deadline & (this.schedule.length - 1);
+		RipenPlantsEvent batch = this.schedule[slot];
+		while (batch != null && batch.deadline != deadline)
+			batch = batch.next;
+		if (batch == null){
+			batch = created = this.spareBatches;
+			if (batch == null)
+				batch = created = new RipenPlantsEvent(this, deadline);
+			else {
+				this.spareBatches = batch.next;
+				batch.reset(deadline);
+			}
+			batch.next = this.schedule[slot];
+			this.schedule[slot] = batch;
+		}
+		if (batch.size == batch.plants.length)
+			batch.plants = Arrays.copyOf(batch.plants, batch.size * 2);
+		batch.plants[batch.size++] = plant;
+		return created;
+	}
+	// Unlink a batch from its schedule slot. Caller holds the schedule lock.
+	private void removeBatch(RipenPlantsEvent batch){
+		int slot = batch.deadline & (this.schedule.length - 1);
+		RipenPlantsEvent b = this.schedule[slot];
+		if (b == batch)
+			this.schedule[slot] = batch.next;
+		else {
+			while (b != null && b.next != batch)
+				b = b.next;
+			if (b != null)
+				b.next = batch.next;
+		}
+	}
+}
@@ -1,62 +1,174 @@
 package pumpkins;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
 import java.io.*;
 /**
  * The Program class governs a multithreaded system that models a pumpkin 
  * patch and a business of selling pumpkins as they ripen.
  */
 public class Program {
-	protected final static int TIME_UNITS = 1000000;
+	private final static int LOG_FILE_BUFFER = 1 << 20;
+	private final static String JOURNAL_SUFFIX = ".journal";
+	private final static AtomicInteger INSTANCES = new AtomicInteger();
+	private final int id;
+	private final Config config;
+	private final ProgramHost host;
 	private final Clock clock;
 	private final Patch patch;
 	private final Jack jack;
 	private final OrderGenerator orderGenerator;
-	private final Random random;
+	private final Trajectory trajectory;
+	private RandomStream random;
+	private final List<RandomStream> randomStreams;
 	private final ExecutorService threadPool;
+	private final AtomicInteger pendingEvents;
+	private final LongAdder eventCount;
+	private final EventCounter eventCounter;
+	private final ProgramMonitor monitor;
 	private final File logFile;
-	private PrintWriter writer;
+	private final LogWriter logWriter;
 	private volatile boolean active;
 	/**
 	 * Program entry point. Creates and executes a Program object.
 	 */
 	public static void main(String[] args){
-		Program p = new Program();
+		Config config;
+		try {
+			config = Config.parse(args);
+		} catch (IllegalArgumentException iae){
+			System.err.println(iae.getMessage());
+			return;
+		}
+		Program p;
+		try {
+			p = new Program(config);
+		} catch (IllegalArgumentException iae){
+			System.err.println(iae.getMessage());
+			return;
+		}
 		p.execute();
 	}	
+	/**
+	 * Initializes and performs setup for a new program with the default
+	 * configuration.
+	 */
+	public Program() {
+		this(new Config());
+	}
 	/**
 	 * Initializes and performs setup for a new program. Logs output
 	 * to program directory in format pumpkinlog_m_d_yyyy_h_m_s
-	 * Begin by calling execute() method.
+	 * Begin by calling execute() method. If the configuration names a
+	 * checkpoint to restore, the program continues from it; throws
+	 * IllegalArgumentException if it cannot be read.
 	 */
-	public Program() {
+	public Program(Config config) {
+		this(config, null);
+	}
+	// Initializes a program for a host, which runs its events on the host's
+	// executor and advances its clock from the host's scheduler. A hosted
+	// program always runs in virtual time.
+	Program(Config config, ProgramHost host) {
+		if (host != null)
+			config.setVirtualTime(true);
+		//Read the checkpoint header first, since it sets the patch options
+		DataInputStream restore = null;
+		if (config.getRestore() != null)
+			try {
+				restore = Checkpoint.open(config.getRestore(), config);
+			} catch (IOException ioe) {
+				throw new IllegalArgumentException("Cannot restore " +
+						config.getRestore() + ": " + ioe.getMessage());
+			}
 		//Set member variable initial values
+		this.config = config;
+		this.host = host;
+		this.id = Program.INSTANCES.incrementAndGet();
 		this.active = true;
-		this.logFile = Program.getLogFile();
-		try {
-			this.writer = new PrintWriter(this.logFile);
-		} catch (IOException ioe) {
-			ioe.printStackTrace();
-		}
-		this.random = new Random();
-		this.threadPool = Executors.newFixedThreadPool(10);
-		this.clock = new Clock(this);
+		this.logFile = Program.getLogFile(host != null ? "_" + this.id : "");
+		Writer out = null;
+		if (config.isTextLog())
+			try {
+				out = config.isLogRolling() ?
+						new RollingLog(this.logFile, config.getLogRollSize() * (1L << 20),
+								config.getLogRollInterval(), Program.LOG_FILE_BUFFER) :
+						new BufferedWriter(new FileWriter(this.logFile),
+								Program.LOG_FILE_BUFFER);
+			} catch (IOException ioe) {
+				ioe.printStackTrace();
+			}
+		EventJournal journal = null;
+		if (config.isJournal())
+			try {
+				journal = new EventJournal(
+						new File(this.logFile.getPath() + Program.JOURNAL_SUFFIX));
+			} catch (IOException ioe) {
+				ioe.printStackTrace();
+			}
+		this.logWriter = new LogWriter(config.isTextLog() ? out : null,
+				config.isConsole() ? System.out : null, journal,
+				config.getLogBuffer(), config.isLogDropWhenFull());
+		this.logWriter.start();
+		this.random = config.getSeed() != null ?
+				new RandomStream(config.getSeed()) : new RandomStream();
+		this.randomStreams = new ArrayList<RandomStream>();
+		String threadPrefix = host != null ? host.getThreadPrefix() :
+				"pumpkin-event-" + this.id + "-";
+		if (config.isDeterministic())
+			this.threadPool = new EventExecutors.CallerRunsExecutor();
+		else if (host != null)
+			this.threadPool = host.getExecutor();
+		else
+			this.threadPool = EventExecutors.create(config, threadPrefix);
+		this.pendingEvents = new AtomicInteger();
+		this.eventCount = new LongAdder();
+		this.eventCounter = new EventCounter();
+		this.clock = new Clock(this, config.isVirtualTime(),
+				config.isDeterministic());
 		this.jack = new Jack(this);
-		this.patch = new Patch(this, this.jack);
+		this.patch = Patch.create(this, this.jack);
 		this.jack.setPatch(this.patch);
-		this.patch.setup(); //Create plants
 		this.orderGenerator = new OrderGenerator(this, jack);
-		//Notify Jack when timer expires
-		PumpkinEvent event = new TimerExpiredEvent(this.jack);
-		this.setTimer(event, Program.TIME_UNITS);
+		if (restore != null)
+			this.restore(restore);
+		else {
+			this.patch.setup(); //Create plants
+			this.orderGenerator.start();
+			//Notify Jack when timer expires
+			PumpkinEvent event = new TimerExpiredEvent(this.jack);
+			this.setTimer(event, config.getTimeUnits());
+			//Report order completion times at intervals while orders come in
+			this.setTimer(new OrderReportEvent(this, this.jack),
+					config.getLatencyWindow());
+		}
+		//Sample the stash and field at whole multiples of the interval
+		this.trajectory = config.getTrajectoryInterval() > 0 ?
+				new Trajectory(config.getTrajectoryInterval()) : null;
+		if (this.trajectory != null)
+			this.setTimer(new TrajectoryEvent(this, this.jack, this.patch,
+					this.trajectory), this.trajectory.delayAfter(this.getTimestamp()));
+		//Publish live statistics over JMX
+		this.monitor = config.isJmx() ? new ProgramMonitor(this, this.clock,
+				this.jack, this.patch, this.threadPool, this.eventCounter,
+				threadPrefix) : null;
+		if (this.monitor != null)
+			this.monitor.register(this.id);
 	}
 	/**
-	 * Begin program execution. Stops automatically after Program.TIME_UNITS
-	 * have elapsed and all orders have been filled.
+	 * Begin program execution. Stops automatically after the configured
+	 * time units have elapsed and all orders have been filled.
 	 */
 	public void execute() {
-		//Start clock which will drive events
-		this.threadPool.execute(this.clock);
+		//A single-threaded clock runs every event itself, on this thread
+		if (this.clock.isSingleThreaded()){
+			this.clock.run();
+			this.shutdown();
+			return;
+		}
+		//Start clock which will drive events. It has a thread of its own so
+		//every pool thread is free for events.
+		new Thread(this.clock, "pumpkin-clock-" + this.id).start();
 		//Wait until program says it's done	
 		synchronized(this){
 			try {
@@ -69,23 +181,168 @@ public class Program {
 		}
 		this.shutdown();
 	}
+	// Begins execution of a hosted program. A single-threaded program runs
+	// to the end as one task on the host's executor; any other is advanced
+	// by the host's scheduler each time its events have finished.
+	void start(){
+		if (this.clock.isSingleThreaded())
+			this.host.getExecutor().execute(new Runnable(){
+				public void run(){
+					Program.this.clock.run();
+					Program.this.host.complete(Program.this);
+				}
+			});
+		else
+			this.host.schedule(this);
+	}
+	// Moves a hosted program's clock to its next instant and hands the
+	// events due then to the executor. Called by the host's scheduler when
+	// no events are running. The program counts as busy until every timer
+	// has been handed over, so it is not scheduled again part way through.
+	void advance(){
+		this.pendingEvents.incrementAndGet();
+		try {
+			this.clock.tick();
+		} finally {
+			this.countDown();
+		}
+	}
+	// Continue from a checkpoint whose header has been read. A seed forks
+	// the run: the checkpoint's random numbers are replaced with new ones.
+	private void restore(DataInputStream in){
+		try {
+			new Checkpoint(this, this.clock, this.jack, this.patch,
+					this.orderGenerator).read(in);
+		} catch (IOException ioe) {
+			if (this.ownsThreadPool())
+				this.threadPool.shutdown();
+			this.logWriter.close();
+			throw new IllegalArgumentException("Cannot restore " +
+					this.config.getRestore() + ": " + ioe.getMessage());
+		}
+		if (this.config.getSeed() != null)
+			this.reseed(this.config.getSeed());
+		this.log("Restored checkpoint " + this.config.getRestore() +
+				" at time " + this.getTimestamp());
+	}
+	// Write a checkpoint and stop - called by the clock once every event up
+	// to the checkpoint time has run
+	void checkpoint(){
+		File file = this.config.getCheckpoint();
+		try {
+			new Checkpoint(this, this.clock, this.jack, this.patch,
+					this.orderGenerator).write(file);
+			this.log("Checkpoint written to " + file + " at time " +
+					this.getTimestamp());
+		} catch (IOException ioe) {
+			ioe.printStackTrace();
+		}
+		this.stop();
+	}
 	// Stop program - called by Jack when timer is expired and all orders
 	// are filled
 	void stop(){
 		this.active = false;
+		this.clock.stop();
 		synchronized(this){
 			this.notifyAll();
 		}
 	}
-	// Runs program events asynchronously with thread pool
+	// Runs program events asynchronously with thread pool. The event is
+	// handed to the pool as it is, and calls finishEvent() once it has run.
+	// Events raised after the program has stopped are dropped
 	void processEvent(PumpkinEvent event){
-		this.threadPool.execute(new Runnable(){
-			public void run(){
-				event.run();
+		if (!this.active)
+			return;
+		if (this.clock.isSingleThreaded()){
+			this.clock.enqueue(event);
+			return;
+		}
+		this.pendingEvents.incrementAndGet();
+		event.setDispatcher(this);
+		this.threadPool.execute(event);
+	}
+	// Runs an event on the single-threaded clock's thread, then counts and
+	// logs it. A failed event is reported and skipped, as the pool would.
+	void runEvent(PumpkinEvent event){
+		try {
+			event.run();
+		} catch (RuntimeException re){
+			re.printStackTrace();
+			return;
+		}
+		this.eventCounter.count(event);
+		if (!event.isSilent())
+			this.log(event);
+		event.recycle();
+		this.eventCount.increment();
+	}
+	// Blocks until no events are queued or running, so a virtual-time
+	// clock knows the current instant is complete
+	void awaitIdle(){
+		synchronized(this.pendingEvents){
+			try {
+				while (this.pendingEvents.get() > 0)
+					this.pendingEvents.wait();
+			} catch (InterruptedException ie){
+				ie.printStackTrace();
+			}
+		}
+	}
+	// Counts and logs an event that has performed, then counts it down and
+	// wakes the clock if it was the last
+	void finishEvent(PumpkinEvent event, boolean performed){
+		try {
+			if (performed){
+				this.eventCounter.count(event);
 				if (!event.isSilent())
-					log(event.toString());
+					this.log(event);
+				event.recycle();
 			}
-		});
+		} finally {
+			this.eventCount.increment();
+			this.countDown();
+		}
+	}
+	// Counts down a finished event. If it was the last, wakes the clock, or
+	// hands a hosted program back to the host's scheduler.
+	private void countDown(){
+		if (this.pendingEvents.decrementAndGet() == 0){
+			if (this.host != null)
+				this.host.schedule(this);
+			else
+				synchronized(this.pendingEvents){
+					this.pendingEvents.notifyAll();
+				}
+		}
+	}
+	// Number of events handed to the thread pool and not yet finished
+	int getPendingEvents(){
+		return this.pendingEvents.get();
+	}
+	// Number of events run so far
+	long getEventCount(){
+		return this.eventCount.sum();
+	}
+	// Number identifying this program in the JVM
+	int getId(){
+		return this.id;
+	}
+	// Whether the program is still running
+	boolean isActive(){
+		return this.active;
+	}
+	// Exposes Jack, so a host can report on the finished program
+	Jack getJack(){
+		return this.jack;
+	}
+	// Samples of the stash and field, or null if none are taken
+	Trajectory getTrajectory(){
+		return this.trajectory;
+	}
+	// Exposes startup options to program objects
+	Config getConfig(){
+		return this.config;
 	}
 	// Exposes clock timestamp to program objects
 	int getTimestamp(){
@@ -95,27 +352,92 @@ public class Program {
 	boolean timerExpired(){
 		return this.clock.expired();
 	}
+	// Indicates whether every event runs on the clock's own thread, so the
+	// components' locks are never needed
+	boolean isSingleThreaded(){
+		return this.clock.isSingleThreaded();
+	}
 	// Registers a timer with the clock to issue event when it expires 
 	void setTimer(PumpkinEvent event, int duration){
 		this.clock.setTimer(event, duration);
 	}
+	// Sets the timers for a number of events at once
+	void setTimers(PumpkinEvent[] events, int[] durations, int count){
+		this.clock.setTimers(events, durations, count);
+	}
+	// Runs a task that is not an event, such as a share of a bulk planting,
+	// on the event thread pool
+	void runTask(Runnable task){
+		this.threadPool.execute(task);
+	}
 	// Closes resources, stops threads, issues final log message
-	private void shutdown(){
+	void shutdown(){
 		this.clock.stop();
-		this.threadPool.shutdown();
+		if (this.ownsThreadPool())
+			this.threadPool.shutdown();
 		this.log(this.jack.completedOrderReport());
-		this.writer.close();
+		for (String line : this.jack.workerReport())
+			this.log(line);
+		this.logWriter.close();
+		if (this.trajectory != null && this.config.getSamplesFile() != null)
+			try {
+				this.trajectory.write(this.config.getSamplesFile() +
+						(this.host != null ? "_" + this.id : ""));
+			} catch (IOException ioe){
+				ioe.printStackTrace();
+			}
+		if (this.monitor != null)
+			this.monitor.unregister();
+		long dropped = this.logWriter.getDroppedCount();
+		long blocked = this.logWriter.getBlockedCount();
+		if (dropped > 0 || blocked > 0)
+			System.err.println("Log writer fell behind: " + dropped +
+					" records dropped, " + blocked + " waits for buffer space");
 	}	
-	// Calculates a random uniform value with given mean
-	int randomUniform(int mean){
-		return (int)(-1 * mean * Math.log(random.nextDouble()));		
+	// Whether the thread pool is this program's own rather than its host's
+	private boolean ownsThreadPool(){
+		return this.host == null || this.threadPool != this.host.getExecutor();
 	}
-	// Calculates a random Gaussian value with given mean and variance
-	int randomGaussian(int mean, int variance){
-		return (int)(variance * random.nextGaussian()) + mean;
+	// Gives a program object its own stream of random numbers. Objects are
+	// created in the same order on every run, so with a seed each one gets
+	// the same stream every time.
+	RandomStream newRandomStream(){
+		synchronized(this.randomStreams){
+			RandomStream stream = this.random.split();
+			this.randomStreams.add(stream);
+			return stream;
+		}
+	}
+	// Writes the state of every random stream to a checkpoint
+	void saveRandom(DataOutputStream out) throws IOException {
+		synchronized(this.randomStreams){
+			this.random.save(out);
+			out.writeInt(this.randomStreams.size());
+			for (RandomStream stream : this.randomStreams)
+				stream.save(out);
+		}
+	}
+	// Reads back the random streams written by saveRandom()
+	void restoreRandom(DataInputStream in) throws IOException {
+		synchronized(this.randomStreams){
+			this.random.restore(in);
+			if (in.readInt() != this.randomStreams.size())
+				throw new IOException("Checkpoint random streams do not match");
+			for (RandomStream stream : this.randomStreams)
+				stream.restore(in);
+		}
+	}
+	// Replaces every random stream with one split from a newly seeded root
+	private void reseed(long seed){
+		synchronized(this.randomStreams){
+			this.random = new RandomStream(seed);
+			for (RandomStream stream : this.randomStreams)
+				stream.reseed(this.random.split());
+		}
 	}
 	// Provides a filename for event log - format pumpkinlog_m_d_yyyy_h_m_s
-	private static File getLogFile(){
+	// followed by the given suffix
+	private static File getLogFile(String suffix){
 		StringBuilder fileName = new StringBuilder();
 		Calendar c = new GregorianCalendar();
 		fileName.append("pumpkinlog_");
@@ -125,20 +447,32 @@ public class Program {
 		fileName.append(c.get(Calendar.HOUR_OF_DAY) + "_");
 		fileName.append(c.get(Calendar.MINUTE) + "_");
 		fileName.append(c.get(Calendar.SECOND));
+		fileName.append(suffix);
 		String filePath = System.getProperty("user.dir") + File.separator +
 		   	"pumpkins" + File.separator + fileName.toString();
 		return new File(filePath);
 	}	
-	// Sends formatted event message to log file
-	void log(String message){
-		System.out.printf("%d: %s - stash = %d - field = %d%n",
-				this.clock.getTimestamp(), message,
+	// Hands event to the log writer, which formats it for the log file and
+	// console, and journals it, on its own thread
+	void log(PumpkinEvent event){
+		//Counting the field takes the patch's lock, so skip it when unlogged
+		if (!this.logWriter.isEnabled())
+			return;
+		this.logWriter.append(EventJournal.typeOf(event),
+				this.clock.getTimestamp(),
+				this.logWriter.hasText() ? event.toString() : null,
 				this.jack.getStashCount(),
-				this.patch.getPumpkinCount());
-		
-		this.writer.printf("%d: %s - stash = %d - field = %d%n",
+				this.patch.getPumpkinCount(),
+				EventJournal.detailOf(event));
+	}
+	// Hands a free-form message to the log writer
+	void log(String message){
+		if (!this.logWriter.isEnabled())
+			return;
+		this.logWriter.append(EventJournal.MESSAGE,
 				this.clock.getTimestamp(), message,
 				this.jack.getStashCount(),
-				this.patch.getPumpkinCount()); 
+				this.patch.getPumpkinCount(),
+				EventJournal.NO_DETAIL);
 	}
 }
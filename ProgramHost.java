@@ -0,0 +1,282 @@
+package pumpkins;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+/**
+ * The ProgramHost class runs many independent Programs in one JVM. Every
+ * hosted program has its own configuration, clock, patch, random numbers
+ * and log, but their events run on one shared executor, and one scheduler
+ * thread advances their clocks. A program runs in virtual time: each time
+ * its last event finishes it is handed back to the scheduler, which moves
+ * its clock to the next pending timer and hands the events due then to
+ * the executor. Programs therefore need no threads of their own, and the
+ * executor's threads are kept busy by whichever programs have work. A
+ * --deterministic program instead runs from start to finish as a single
+ * task on the executor, so hundreds of seeded runs fill every core.
+ *
+ * Run it as pumpkins.ProgramHost --instances=N [--seed=S] [--out=FILE] and
+ * any Program options, which apply to every instance. Instance i is seeded
+ * with S + i. The executor is chosen with --executor and --pool-size
+ * (default one thread per processor). Each instance's results are printed
+ * as it finishes and written to FILE (default host.csv) at the end.
+ */
+public class ProgramHost implements Runnable {
+	private final static String THREAD_PREFIX = "pumpkin-host-";
+	private final static String[] COLUMNS = { "id", "seed", "end_time",
+		"events", "orders", "mean_latency", "p99_latency", "stash", "wall_ms" };
+	private final ExecutorService executor;
+	private final BlockingQueue<Program> ready;
+	private final Map<Program, Long> started; // Start time of each running program
+	private final List<Result> results;
+	private final Thread scheduler;
+	private final boolean print;
+	private int running;
+	/**
+	 * Program host entry point. Runs the instances and reports their
+	 * results.
+	 */
+	public static void main(String[] args) throws IOException {
+		int instances = 1;
+		Long seed = null;
+		String out = "host.csv";
+		// Quiet by default, so instances do not share the console
+		List<String> options = new ArrayList<String>(Arrays.asList(
+				"--pool-size=" + Runtime.getRuntime().availableProcessors(),
+				"--console=false", "--log-format=none", "--jmx=false"));
+		for (String arg : args){
+			if (arg.startsWith("--instances="))
+				instances = Integer.parseInt(arg.substring(12));
+			else if (arg.startsWith("--seed="))
+				seed = Long.valueOf(arg.substring(7));
+			else if (arg.startsWith("--out="))
+				out = arg.substring(6);
+			else
+				options.add(arg);
+		}
+		String[] programArgs = options.toArray(new String[0]);
+		Config hostConfig;
+		try {
+			hostConfig = Config.parse(programArgs);
+			if (instances < 1)
+				throw new IllegalArgumentException("--instances must be at least 1");
+			if (hostConfig.getCheckpoint() != null && instances > 1)
+				throw new IllegalArgumentException(
+						"--checkpoint needs a single instance");
+		} catch (IllegalArgumentException iae){
+			System.err.println(iae.getMessage());
+			return;
+		}
+
+		ProgramHost host = new ProgramHost(hostConfig, true);
+		System.out.println(String.join("\t", ProgramHost.COLUMNS));
+		try {
+			for (int i = 0; i < instances; i++){
+				Config config = Config.parse(programArgs);
+				if (seed != null)
+					config.setSeed(seed + i);
+				host.add(config);
+			}
+			host.await();
+		} catch (IllegalArgumentException iae){
+			System.err.println(iae.getMessage());
+		} finally {
+			host.shutdown();
+		}
+		try (PrintWriter csv = new PrintWriter(new FileWriter(out))){
+			csv.println(String.join(",", ProgramHost.COLUMNS));
+			for (Result result : host.getResults())
+				csv.println(result.row(","));
+		}
+	}
+	/**
+	 * Create a host whose executor is chosen with the configuration's
+	 * executor and pool size, and start its scheduler. If print is set,
+	 * each program's results are printed as it finishes.
+	 */
+	public ProgramHost(Config config, boolean print){
+		this.executor = EventExecutors.create(config, ProgramHost.THREAD_PREFIX);
+		this.ready = new LinkedBlockingQueue<Program>();
+		this.started = new ConcurrentHashMap<Program, Long>();
+		this.results = new ArrayList<Result>();
+		this.print = print;
+		this.running = 0;
+		this.scheduler = new Thread(this, "pumpkin-host-scheduler");
+		this.scheduler.start();
+	}
+	/**
+	 * Create a program with the given configuration and start it on this
+	 * host. Throws IllegalArgumentException if the program cannot be
+	 * created, e.g. its checkpoint cannot be restored.
+	 */
+	public Program add(Config config){
+		Program program = new Program(config, this);
+		synchronized(this){
+			++this.running;
+		}
+		this.started.put(program, System.nanoTime());
+		program.start();
+		return program;
+	}
+	/**
+	 * Block until every program added so far has finished
+	 */
+	public void await(){
+		this.await(0);
+	}
+	/**
+	 * Block until no more than the given number of programs are running,
+	 * e.g. to bound the memory held by programs waiting for the executor
+	 */
+	public synchronized void await(int running){
+		try {
+			while (this.running > running)
+				this.wait();
+		} catch (InterruptedException ie){
+			ie.printStackTrace();
+		}
+	}
+	/**
+	 * Get the results of the finished programs, in the order they were added
+	 */
+	public synchronized List<Result> getResults(){
+		List<Result> results = new ArrayList<Result>(this.results);
+		Collections.sort(results, new Comparator<Result>(){
+			public int compare(Result a, Result b){
+				return Integer.compare(a.id, b.id);
+			}
+		});
+		return results;
+	}
+	/**
+	 * Stop the scheduler and the executor. Programs still running are
+	 * abandoned.
+	 */
+	public void shutdown(){
+		this.scheduler.interrupt();
+		this.executor.shutdown();
+	}
+	/**
+	 * Take programs whose events have all finished off the ready queue, and
+	 * advance each one's clock, or finish it if it has stopped
+	 */
+	public void run(){
+		while (true){
+			Program program;
+			try {
+				program = this.ready.take();
+			} catch (InterruptedException ie){
+				return;
+			}
+			// Already finished, or its events were raised after it stopped
+			if (!this.started.containsKey(program) || program.getPendingEvents() > 0)
+				continue;
+			if (program.isActive())
+				program.advance();
+			else
+				this.executor.execute(new Runnable(){
+					public void run(){
+						ProgramHost.this.complete(program);
+					}
+				});
+		}
+	}
+	// Executor shared by every hosted program
+	ExecutorService getExecutor(){
+		return this.executor;
+	}
+	// Prefix for the names of the executor's threads
+	String getThreadPrefix(){
+		return ProgramHost.THREAD_PREFIX;
+	}
+	// Queues a program whose events have all finished for the scheduler
+	void schedule(Program program){
+		this.ready.add(program);
+	}
+	// Shuts down a program that has stopped and records its results. Only
+	// the first call for a program has any effect.
+	void complete(Program program){
+		Long start = this.started.remove(program);
+		if (start == null)
+			return;
+		program.shutdown();
+		Result result = new Result(program, (System.nanoTime() - start) / 1000000);
+		if (this.print)
+			System.out.println(result.row("\t"));
+		synchronized(this){
+			this.results.add(result);
+			--this.running;
+			this.notifyAll();
+		}
+	}
+	/**
+	 * The Result class holds the outcome of one hosted program
+	 */
+	public static class Result {
+		private final int id;
+		private final Long seed;
+		private final int endTime;
+		private final long events;
+		private final LatencyRecorder.Snapshot latency;
+		private final int stash;
+		private final Trajectory trajectory;
+		private final long wallMillis;
+		Result(Program program, long wallMillis){
+			this.id = program.getId();
+			this.seed = program.getConfig().getSeed();
+			this.endTime = program.getTimestamp();
+			this.events = program.getEventCount();
+			this.latency = program.getJack().getLatency().snapshot();
+			this.stash = program.getJack().getStashCount();
+			this.trajectory = program.getTrajectory();
+			this.wallMillis = wallMillis;
+		}
+		/**
+		 * Get the program's number in the JVM
+		 */
+		public int getId(){
+			return this.id;
+		}
+		/**
+		 * Get the order completion times over the whole run
+		 */
+		public LatencyRecorder.Snapshot getLatency(){
+			return this.latency;
+		}
+		/**
+		 * Get the clock time at which the program stopped
+		 */
+		public int getEndTime(){
+			return this.endTime;
+		}
+		/**
+		 * Get Jack's stash when the program stopped
+		 */
+		public int getStash(){
+			return this.stash;
+		}
+		/**
+		 * Get the samples of the stash and field, or null if none were taken
+		 */
+		public Trajectory getTrajectory(){
+			return this.trajectory;
+		}
+		/**
+		 * Get the wall time from starting the program to its shutdown
+		 */
+		public long getWallMillis(){
+			return this.wallMillis;
+		}
+		// Format the result as the host's columns
+		String row(String separator){
+			return this.id + separator +
+					(this.seed != null ? this.seed.toString() : "") + separator +
+					this.endTime + separator +
+					this.events + separator +
+					this.latency.getCount() + separator +
+					String.format(Locale.ROOT, "%.2f", this.latency.getMean()) + separator +
+					this.latency.getPercentile(99) + separator +
+					this.stash + separator +
+					this.wallMillis;
+		}
+	}
+}
@@ -0,0 +1,211 @@
+package pumpkins;
+import java.lang.management.*;
+import java.util.*;
+import java.util.concurrent.*;
+import javax.management.*;
+/**
+ * The ProgramMonitor exposes a running Program through JMX as the MBean
+ * pumpkins:type=Program,id=N. Gauges are read from the program objects
+ * when asked for. Monitor contention is measured from the JVM's thread
+ * statistics for the program's pool threads, so the program itself does
+ * no extra work for it; the JVM's blocked-time accounting and a sampling
+ * thread are only started once someone reads those attributes.
+ */
+public class ProgramMonitor implements ProgramMonitorMXBean, Runnable {
+	private final static int SAMPLE_INTERVAL = 5; // ms between lock samples
+	private final Program program;
+	private final Clock clock;
+	private final Jack jack;
+	private final Patch patch;
+	private final ExecutorService threadPool;
+	private final EventCounter events;
+	private final String threadPrefix;
+	private final ThreadMXBean threads;
+	private final Map<String, Long> contention;
+	private ObjectName name;
+	private Map<String, Long> lastCounts;
+	private long lastRead;
+	private Thread sampler;
+	private volatile boolean active;
+	/**
+	 * Create a monitor for a program whose pool threads' names begin with
+	 * threadPrefix
+	 */
+	public ProgramMonitor(Program program, Clock clock, Jack jack, Patch patch,
+			ExecutorService threadPool, EventCounter events, String threadPrefix){
+		this.program = program;
+		this.clock = clock;
+		this.jack = jack;
+		this.patch = patch;
+		this.threadPool = threadPool;
+		this.events = events;
+		this.threadPrefix = threadPrefix;
+		this.threads = ManagementFactory.getThreadMXBean();
+		this.contention = new TreeMap<String, Long>();
+		this.lastCounts = new HashMap<String, Long>();
+		this.lastRead = System.nanoTime();
+		this.active = true;
+	}
+	/**
+	 * Register with the platform MBean server under the given id
+	 */
+	public void register(int id){
+		try {
+			this.name = new ObjectName("pumpkins:type=Program,id=" + id);
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, this.name);
+		} catch (JMException jme){
+			jme.printStackTrace();
+		}
+	}
+	/**
+	 * Unregister from the MBean server and stop sampling
+	 */
+	public void unregister(){
+		this.active = false;
+		if (this.name == null)
+			return;
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.name);
+		} catch (JMException jme){
+			jme.printStackTrace();
+		}
+	}
+	public int getTimestamp(){
+		return this.clock.getTimestamp();
+	}
+	public int getPendingTimers(){
+		return this.clock.getPendingTimers();
+	}
+	public int getPendingEvents(){
+		return this.program.getPendingEvents();
+	}
+	public int getQueuedEvents(){
+		if (this.threadPool instanceof ThreadPoolExecutor)
+			return ((ThreadPoolExecutor)this.threadPool).getQueue().size();
+		if (this.threadPool instanceof ForkJoinPool){
+			ForkJoinPool pool = (ForkJoinPool)this.threadPool;
+			return (int)Math.min(Integer.MAX_VALUE,
+					pool.getQueuedSubmissionCount() + pool.getQueuedTaskCount());
+		}
+		return -1;
+	}
+	public int getActiveThreads(){
+		if (this.threadPool instanceof ThreadPoolExecutor)
+			return ((ThreadPoolExecutor)this.threadPool).getActiveCount();
+		if (this.threadPool instanceof ForkJoinPool)
+			return ((ForkJoinPool)this.threadPool).getActiveThreadCount();
+		return -1;
+	}
+	public int getPoolSize(){
+		if (this.threadPool instanceof ThreadPoolExecutor)
+			return ((ThreadPoolExecutor)this.threadPool).getPoolSize();
+		if (this.threadPool instanceof ForkJoinPool)
+			return ((ForkJoinPool)this.threadPool).getPoolSize();
+		return -1;
+	}
+	public long getEventCount(){
+		return this.program.getEventCount();
+	}
+	public Map<String, Long> getEventCounts(){
+		return this.events.getCounts();
+	}
+	public synchronized Map<String, Double> getEventRates(){
+		Map<String, Long> counts = this.events.getCounts();
+		long now = System.nanoTime();
+		double seconds = Math.max(1e-9, (now - this.lastRead) / 1e9);
+		Map<String, Double> rates = new TreeMap<String, Double>();
+		for (Map.Entry<String, Long> e : counts.entrySet())
+			rates.put(e.getKey(), (e.getValue() -
+					this.lastCounts.getOrDefault(e.getKey(), 0L)) / seconds);
+		this.lastCounts = counts;
+		this.lastRead = now;
+		return rates;
+	}
+	public int getStashCount(){
+		return this.jack.getStashCount();
+	}
+	public int getOpenOrders(){
+		return this.jack.getOpenOrderCount();
+	}
+	public int getOrdersInTransit(){
+		return this.jack.getInTransitCount();
+	}
+	public int getWorkers(){
+		return this.jack.getWorkerCount();
+	}
+	public int getIdleWorkers(){
+		return this.jack.getIdleWorkerCount();
+	}
+	public int getRipePumpkins(){
+		return this.patch.getPumpkinCount();
+	}
+	public int getUnripePlants(){
+		return this.patch.getUnripeCount();
+	}
+	public long getBlockedCount(){
+		long count = 0;
+		for (ThreadInfo info : this.poolThreads())
+			count += info.getBlockedCount();
+		return count;
+	}
+	public long getBlockedTime(){
+		if (!this.threads.isThreadContentionMonitoringSupported())
+			return -1;
+		if (!this.threads.isThreadContentionMonitoringEnabled())
+			this.threads.setThreadContentionMonitoringEnabled(true);
+		long time = 0;
+		for (ThreadInfo info : this.poolThreads())
+			if (info.getBlockedTime() > 0)
+				time += info.getBlockedTime();
+		return time;
+	}
+	public Map<String, Integer> getBlockedThreads(){
+		Map<String, Integer> blocked = new TreeMap<String, Integer>();
+		for (ThreadInfo info : this.poolThreads())
+			if (info.getThreadState() == Thread.State.BLOCKED &&
+					info.getLockInfo() != null){
+				String lock = ProgramMonitor.lockName(info.getLockInfo());
+				blocked.put(lock, blocked.getOrDefault(lock, 0) + 1);
+			}
+		return blocked;
+	}
+	public synchronized Map<String, Long> getLockContention(){
+		if (this.sampler == null && this.active){
+			this.sampler = new Thread(this, "pumpkin-lock-sampler");
+			this.sampler.setDaemon(true);
+			this.sampler.start();
+		}
+		return new TreeMap<String, Long>(this.contention);
+	}
+	/**
+	 * Sample the monitors pool threads are blocked on until unregistered
+	 */
+	public void run(){
+		while (this.active){
+			Map<String, Integer> blocked = this.getBlockedThreads();
+			synchronized(this){
+				for (Map.Entry<String, Integer> e : blocked.entrySet())
+					this.contention.put(e.getKey(),
+							this.contention.getOrDefault(e.getKey(), 0L) + e.getValue());
+			}
+			try {
+				Thread.sleep(ProgramMonitor.SAMPLE_INTERVAL);
+			} catch (InterruptedException ie){
+				ie.printStackTrace();
+			}
+		}
+	}
+	// Get the current state of each of the program's pool threads
+	private List<ThreadInfo> poolThreads(){
+		List<ThreadInfo> pool = new ArrayList<ThreadInfo>();
+		for (ThreadInfo info : this.threads.getThreadInfo(this.threads.getAllThreadIds()))
+			if (info != null && info.getThreadName().startsWith(this.threadPrefix))
+				pool.add(info);
+		return pool;
+	}
+	// Short name of a monitor's class, e.g. Jack or ArrayPatch$IdList
+	private static String lockName(LockInfo lock){
+		String name = lock.getClassName();
+		return name.substring(name.lastIndexOf('.') + 1);
+	}
+}
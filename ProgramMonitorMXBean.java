@@ -0,0 +1,100 @@
+package pumpkins;
+import java.util.*;
+/**
+ * The ProgramMonitorMXBean is the management interface of a running
+ * Program, for reading with jconsole or any other JMX client. Every
+ * attribute is read when it is asked for; nothing is collected for it
+ * in the meantime, except the lock samples once they have been read.
+ */
+public interface ProgramMonitorMXBean {
+	/**
+	 * Get the clock's current timestamp
+	 */
+	int getTimestamp();
+	/**
+	 * Get number of timers waiting to expire
+	 */
+	int getPendingTimers();
+	/**
+	 * Get number of events handed to the thread pool and not yet finished
+	 */
+	int getPendingEvents();
+	/**
+	 * Get number of events waiting in the thread pool's queue, or -1 if
+	 * the executor has no queue
+	 */
+	int getQueuedEvents();
+	/**
+	 * Get number of pool threads running an event, or -1 if the executor
+	 * has no pool
+	 */
+	int getActiveThreads();
+	/**
+	 * Get number of threads in the pool, or -1 if the executor has no pool
+	 */
+	int getPoolSize();
+	/**
+	 * Get number of events run
+	 */
+	long getEventCount();
+	/**
+	 * Get number of events run by event class
+	 */
+	Map<String, Long> getEventCounts();
+	/**
+	 * Get events run per second by event class, since this attribute was
+	 * last read or since the program started
+	 */
+	Map<String, Double> getEventRates();
+	/**
+	 * Get number of pumpkins in Jack's stash
+	 */
+	int getStashCount();
+	/**
+	 * Get number of orders waiting to be shipped
+	 */
+	int getOpenOrders();
+	/**
+	 * Get number of orders shipped but not yet delivered
+	 */
+	int getOrdersInTransit();
+	/**
+	 * Get number of workers in Jack's crew
+	 */
+	int getWorkers();
+	/**
+	 * Get number of Jack's workers who are resting
+	 */
+	int getIdleWorkers();
+	/**
+	 * Get number of ripe pumpkins in the patch
+	 */
+	int getRipePumpkins();
+	/**
+	 * Get number of unripe plants in the patch
+	 */
+	int getUnripePlants();
+	/**
+	 * Get number of times pool threads have blocked to enter a monitor
+	 */
+	long getBlockedCount();
+	/**
+	 * Get milliseconds pool threads have spent blocked on monitors since
+	 * this attribute was first read, or -1 if the JVM cannot measure it
+	 */
+	long getBlockedTime();
+	/**
+	 * Get number of pool threads blocked right now, by class of the
+	 * monitor they are waiting for: Jack, a Jack$Worker, the ArrayDeque of
+	 * Jack's spare orders, the patch's PlantList or ArrayPatch$IdList, and
+	 * the ripening schedules (RipenPlantsEvent[] or RipenBatchEvent[]).
+	 * Jack's open orders are in a lock-free OrderQueue, which has none.
+	 */
+	Map<String, Integer> getBlockedThreads();
+	/**
+	 * Get number of pool threads found blocked, by class of monitor, in
+	 * samples taken every few milliseconds since this attribute was first
+	 * read
+	 */
+	Map<String, Long> getLockContention();
+}
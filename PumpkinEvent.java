@@ -3,11 +3,43 @@ import java.util.*;
 /**
  * The PumpkinEvent is an abstract event that is extended by the various
  * events in the pumpkin system. It has a silent property, if not silent
- * the applcation will log it. Most importantly, it is Runnable.
+ * the applcation will log it. Most importantly, it is Runnable: the
+ * program hands the event itself to its executor, and once the event has
+ * performed it reports back to the program that dispatched it.
  */
 public abstract class PumpkinEvent implements Runnable {
 	protected boolean silent; // Set true to keep event from appearing in log
+	private Program dispatcher; // Program that handed the event to its executor
 	public boolean isSilent(){
 		return this.silent;
 	}
+	/**
+	 * Perform the event, then let the program that dispatched it count and
+	 * log it. An event run directly, outside a program, only performs.
+	 */
+	public final void run(){
+		Program dispatcher = this.dispatcher;
+		if (dispatcher == null){
+			this.perform();
+			return;
+		}
+		boolean performed = false;
+		try {
+			this.perform();
+			performed = true;
+		} finally {
+			dispatcher.finishEvent(this, performed);
+		}
+	}
+	// What the event does
+	protected abstract void perform();
+	// Called once the program has counted and logged the event, so an event
+	// that is reused can go back to its pool. Events run directly are not
+	// recycled.
+	protected void recycle(){
+	}
+	// Remember the program that is about to run the event
+	void setDispatcher(Program dispatcher){
+		this.dispatcher = dispatcher;
+	}
 }
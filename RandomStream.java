@@ -0,0 +1,99 @@
+package pumpkins;
+import java.io.*;
+import java.util.random.*;
+/**
+ * The RandomStream class is a seedable stream of random numbers that can be
+ * split into independent streams. The program keeps a root stream and
+ * splits one off for each part of the simulation that draws numbers, so
+ * the parts do not contend for a shared generator and, given a seed, each
+ * part draws the same numbers on every run. The generator is SplitMix64,
+ * the algorithm behind SplittableRandom; its whole state is two longs, so
+ * it is easily saved in a checkpoint. Gaussian and exponential values come
+ * from RandomGenerator's ziggurat samplers.
+ *
+ * A stream may be shared by several threads. Each draw holds the stream's
+ * lock, which is uncontended while its part of the simulation is.
+ */
+public class RandomStream implements RandomGenerator {
+	private final static long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+	private long seed;
+	private long gamma; // Odd increment, different for each split stream
+	/**
+	 * Create a root stream with the given seed
+	 */
+	public RandomStream(long seed){
+		this(seed, RandomStream.GOLDEN_GAMMA);
+	}
+	/**
+	 * Create a root stream with a seed taken from the system clock
+	 */
+	public RandomStream(){
+		this(RandomStream.mix64(System.currentTimeMillis()) ^
+				RandomStream.mix64(System.nanoTime()));
+	}
+	private RandomStream(long seed, long gamma){
+		this.seed = seed;
+		this.gamma = gamma;
+	}
+	/**
+	 * Split off a new stream whose numbers are independent of this one's
+	 */
+	public synchronized RandomStream split(){
+		return new RandomStream(this.nextLong(), RandomStream.mixGamma(this.nextSeed()));
+	}
+	/**
+	 * Get the next 64 random bits
+	 */
+	public synchronized long nextLong(){
+		return RandomStream.mix64(this.nextSeed());
+	}
+	/**
+	 * Draw an exponentially distributed whole number with the given mean
+	 */
+	public synchronized int exponential(int mean){
+		return (int)(mean * this.nextExponential());
+	}
+	/**
+	 * Draw a normally distributed whole number with the given mean and
+	 * standard deviation
+	 */
+	public synchronized int gaussian(int mean, int deviation){
+		return (int)(deviation * this.nextGaussian()) + mean;
+	}
+	// Take over the state of another stream, e.g. a new split of a
+	// reseeded root when a restored program forks
+	synchronized void reseed(RandomStream from){
+		synchronized(from){
+			this.seed = from.seed;
+			this.gamma = from.gamma;
+		}
+	}
+	// Write the stream's state to a checkpoint
+	synchronized void save(DataOutputStream out) throws IOException {
+		out.writeLong(this.seed);
+		out.writeLong(this.gamma);
+	}
+	// Read back the state written by save()
+	synchronized void restore(DataInputStream in) throws IOException {
+		this.seed = in.readLong();
+		this.gamma = in.readLong();
+	}
+	// Advance the state. Caller holds the lock.
+	private long nextSeed(){
+		return this.seed += this.gamma;
+	}
+	// Stafford's variant 13 of the MurmurHash3 finalizer
+	private static long mix64(long z){
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+	// Turn a seed into a split stream's increment: odd, and with enough bit
+	// transitions that the stream is well mixed
+	private static long mixGamma(long z){
+		z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+		z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+		z = (z ^ (z >>> 33)) | 1L;
+		return (Long.bitCount(z ^ (z >>> 1)) < 24) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+	}
+}
@@ -0,0 +1,52 @@
+package pumpkins;
+/**
+ * The RipenBatchEvent occurs when the clock reaches the time at which a
+ * group of plants in an ArrayPatch are due to ripen. The whole group moves
+ * from unripe to ripe together and Jack is notified once.
+ */
+public class RipenBatchEvent extends PumpkinEvent {
+	final static String EVENT_DESCRIPTION = "Pumpkins ripen";
+	private final ArrayPatch patch;
+	int deadline;
+	int[] plants; // Ids of the plants due, then of the plants that ripened
+	int size;
+	RipenBatchEvent next; // Next batch in the same schedule slot
+	/**
+	 * Create an empty batch for plants ripening at the given time
+	 */
+	public RipenBatchEvent(ArrayPatch patch, int deadline){
+		this.patch = patch;
+		this.deadline = deadline;
+		this.plants = new int[16];
+		this.size = 0;
+		this.silent = false;
+	}
+	/**
+	 * Execute event
+	 */
+	protected void perform(){
+		this.patch.ripen(this);
+		this.silent = this.size == 0;
+	}
+	// Reuse the batch for plants ripening at another time
+	void reset(int deadline){
+		this.deadline = deadline;
+		this.size = 0;
+		this.silent = false;
+		this.next = null;
+	}
+	// Once counted and logged, the patch can reuse the batch
+	protected void recycle(){
+		this.patch.recycle(this);
+	}
+	// The patch the plants grow in, for checkpoints
+	ArrayPatch getPatch(){
+		return this.patch;
+	}
+	/**
+	 * Represent as string for log
+	 */
+	public String toString(){
+		return RipenBatchEvent.EVENT_DESCRIPTION + " (" + this.size + ")";
+	}
+}
@@ -5,15 +5,15 @@ package pumpkins;
  * it notifies Jack.
  */
 public class RipenEvent extends PumpkinEvent {
-	private final static String EVENT_DESCRIPTION = "Pumpkin ripens"; 
+	final static String EVENT_DESCRIPTION = "Pumpkin ripens"; 
 	private final Program program;
 	private final Plant plant;
-	private final Patch patch;
+	private final PlantPatch patch;
 	private final Jack jack;
 	/**
 	 * Create a new RipenEvent
 	 */
-	public RipenEvent(Program program, Plant plant, Patch patch, Jack jack){
+	public RipenEvent(Program program, Plant plant, PlantPatch patch, Jack jack){
 		this.program = program;
 		this.plant = plant;
 		this.patch = patch;
@@ -23,11 +23,19 @@ public class RipenEvent extends PumpkinEvent {
 	/**
 	 * Execute event
 	 */
-	public void run(){
+	protected void perform(){
 		this.plant.ripen();
 		this.patch.ripen(this.plant);
 		this.plant.notifyJack();
 	}
+	// The plant that ripens, for checkpoints
+	Plant getPlant(){
+		return this.plant;
+	}
+	// The patch the plant grows in, for checkpoints
+	PlantPatch getPatch(){
+		return this.patch;
+	}
 	/**
 	 * Represent as string for log
 	 */
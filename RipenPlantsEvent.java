@@ -0,0 +1,52 @@
+package pumpkins;
+/**
+ * The RipenPlantsEvent occurs when the clock reaches the time at which a
+ * group of Plant objects in a PlantPatch are due to ripen. It is the object
+ * store's counterpart of RipenBatchEvent: the whole group moves from unripe
+ * to ripe under one hold of each patch lock, and Jack is notified once.
+ */
+public class RipenPlantsEvent extends PumpkinEvent {
+	private final PlantPatch patch;
+	int deadline;
+	Plant[] plants; // Plants due, then the plants that ripened
+	int size;
+	RipenPlantsEvent next; // Next batch in the same schedule slot
+	/**
+	 * Create an empty batch for plants ripening at the given time
+	 */
+	public RipenPlantsEvent(PlantPatch patch, int deadline){
+		this.patch = patch;
+		this.deadline = deadline;
+		this.plants = new Plant[16];
+		this.size = 0;
+		this.silent = false;
+	}
+	/**
+	 * Execute event
+	 */
+	protected void perform(){
+		this.patch.ripen(this);
+		this.silent = this.size == 0;
+	}
+	// Reuse the batch for plants ripening at another time
+	void reset(int deadline){
+		this.deadline = deadline;
+		this.size = 0;
+		this.silent = false;
+		this.next = null;
+	}
+	// Once counted and logged, the patch can reuse the batch
+	protected void recycle(){
+		this.patch.recycle(this);
+	}
+	// The patch the plants grow in, for checkpoints
+	PlantPatch getPatch(){
+		return this.patch;
+	}
+	/**
+	 * Represent as string for log
+	 */
+	public String toString(){
+		return RipenBatchEvent.EVENT_DESCRIPTION + " (" + this.size + ")";
+	}
+}
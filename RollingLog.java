@@ -0,0 +1,228 @@
+package pumpkins;
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.zip.*;
+/**
+ * The RollingLog class is a text log written as a series of segment files
+ * rather than one file. The LogWriter starts a new segment once the current
+ * one reaches a given size, or when the clock crosses a multiple of a given
+ * number of time units. Each closed segment is compressed with gzip on a
+ * background thread, so the log writer never waits for compression, and is
+ * then listed in a manifest with the range of timestamps it holds.
+ *
+ * For a log file pumpkinlog_X the segments are pumpkinlog_X.00001.gz,
+ * pumpkinlog_X.00002.gz and so on, and the manifest is
+ * pumpkinlog_X.manifest, a CSV file with the columns segment, first,
+ * last, records and bytes (before compression). Lines for a range of
+ * timestamps are read back from just the segments that hold them with
+ * java pumpkins.RollingLog <manifest> [from [to]].
+ */
+public class RollingLog extends Writer {
+	final static String MANIFEST_SUFFIX = ".manifest";
+	private final static String SEGMENT_SUFFIX = ".gz";
+	private final static String[] COLUMNS = { "segment", "first", "last",
+		"records", "bytes" };
+	private final static int BUFFER = 1 << 16;
+	private final File base;
+	private final long maxBytes;
+	private final int interval;
+	private final int bufferSize;
+	private final ExecutorService compressor;
+	private final PrintWriter manifest; // Written only by the compressor
+	private Writer current;
+	private File currentFile;
+	private int segments;
+	private long bytes;
+	private int records;
+	private int first;
+	private int last;
+	/**
+	 * Reader entry point. Arguments are the manifest and an optional first
+	 * and last timestamp; the matching lines are written to standard output.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1 || args.length > 3){
+			System.err.println("Usage: RollingLog <manifest> [from [to]]");
+			return;
+		}
+		int from = args.length > 1 ? Integer.parseInt(args[1]) : Integer.MIN_VALUE;
+		int to = args.length > 2 ? Integer.parseInt(args[2]) : Integer.MAX_VALUE;
+		Writer out = new BufferedWriter(new OutputStreamWriter(System.out), RollingLog.BUFFER);
+		try {
+			RollingLog.read(new File(args[0]), from, to, out);
+		} finally {
+			out.flush();
+		}
+	}
+	/**
+	 * Create a log that writes segments of the given base file, starting a
+	 * new one after maxBytes characters or at each multiple of interval
+	 * time units. Either limit may be 0 to leave it out.
+	 */
+	public RollingLog(File base, long maxBytes, int interval, int bufferSize)
+			throws IOException {
+		this.base = base;
+		this.maxBytes = maxBytes;
+		this.interval = interval;
+		this.bufferSize = bufferSize;
+		this.manifest = new PrintWriter(new BufferedWriter(new FileWriter(
+				base.getPath() + RollingLog.MANIFEST_SUFFIX)));
+		this.manifest.println(String.join(",", RollingLog.COLUMNS));
+		this.manifest.flush();
+		this.compressor = Executors.newSingleThreadExecutor(new ThreadFactory(){
+			public Thread newThread(Runnable r){
+				Thread thread = new Thread(r, "pumpkin-log-gzip");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		this.segments = 0;
+		this.open();
+	}
+	/**
+	 * Write characters to the current segment
+	 */
+	public void write(char[] chars, int offset, int length) throws IOException {
+		this.current.write(chars, offset, length);
+		this.bytes += length;
+	}
+	/**
+	 * Write a string to the current segment
+	 */
+	public void write(String s, int offset, int length) throws IOException {
+		this.current.write(s, offset, length);
+		this.bytes += length;
+	}
+	/**
+	 * Write a sequence of characters, such as a batch of lines, to the
+	 * current segment
+	 */
+	public Writer append(CharSequence chars) throws IOException {
+		this.current.append(chars);
+		this.bytes += chars.length();
+		return this;
+	}
+	/**
+	 * Flush the current segment
+	 */
+	public void flush() throws IOException {
+		this.current.flush();
+	}
+	/**
+	 * Close and compress the last segment, then wait for every segment to
+	 * be compressed and listed in the manifest
+	 */
+	public void close() throws IOException {
+		this.finish();
+		this.compressor.shutdown();
+		try {
+			this.compressor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException ie){
+			ie.printStackTrace();
+		}
+		this.manifest.close();
+	}
+	// Whether a record at the given time, written after pending characters
+	// not yet handed to the log, belongs in a new segment
+	boolean isDue(int timestamp, int pending){
+		if (this.records == 0)
+			return false;
+		if (this.maxBytes > 0 && this.bytes + pending >= this.maxBytes)
+			return true;
+		return this.interval > 0 && timestamp / this.interval != this.first / this.interval;
+	}
+	// Note a record written to the current segment
+	void record(int timestamp){
+		if (this.records++ == 0)
+			this.first = timestamp;
+		this.last = timestamp;
+	}
+	// Close the current segment, hand it to the compressor and start the
+	// next one
+	void roll() throws IOException {
+		this.finish();
+		this.open();
+	}
+	// Start a new, empty segment
+	private void open() throws IOException {
+		this.currentFile = new File(String.format(Locale.ROOT, "%s.%05d",
+				this.base.getPath(), ++this.segments));
+		this.current = new BufferedWriter(new FileWriter(this.currentFile),
+				this.bufferSize);
+		this.bytes = 0;
+		this.records = 0;
+	}
+	// Close the current segment and queue it for compression. An empty
+	// segment is removed instead.
+	private void finish() throws IOException {
+		this.current.close();
+		File segment = this.currentFile;
+		if (this.records == 0){
+			segment.delete();
+			return;
+		}
+		String entry = "," + this.first + "," + this.last + "," + this.records +
+				"," + this.bytes;
+		this.compressor.execute(new Runnable(){
+			public void run(){
+				RollingLog.this.compress(segment, entry);
+			}
+		});
+	}
+	// Compress a closed segment and list it in the manifest. If compression
+	// fails the segment is listed as it is.
+	private void compress(File segment, String entry){
+		File compressed = new File(segment.getPath() + RollingLog.SEGMENT_SUFFIX);
+		File listed = compressed;
+		try (InputStream in = new FileInputStream(segment);
+				OutputStream out = new GZIPOutputStream(
+						new FileOutputStream(compressed), RollingLog.BUFFER)){
+			byte[] buffer = new byte[RollingLog.BUFFER];
+			for (int n = in.read(buffer); n >= 0; n = in.read(buffer))
+				out.write(buffer, 0, n);
+		} catch (IOException ioe){
+			ioe.printStackTrace();
+			compressed.delete();
+			listed = segment;
+		}
+		if (listed == compressed)
+			segment.delete();
+		this.manifest.println(listed.getName() + entry);
+		this.manifest.flush();
+	}
+	// Copy the lines in a timestamp range from the segments listed in a
+	// manifest, opening only the segments whose range overlaps it
+	static void read(File manifest, int from, int to, Writer out) throws IOException {
+		File dir = manifest.getAbsoluteFile().getParentFile();
+		try (BufferedReader in = new BufferedReader(new FileReader(manifest))){
+			in.readLine();
+			for (String entry = in.readLine(); entry != null; entry = in.readLine()){
+				String[] fields = entry.split(",");
+				if (Integer.parseInt(fields[2]) < from || Integer.parseInt(fields[1]) > to)
+					continue;
+				File segment = new File(dir, fields[0]);
+				InputStream raw = new FileInputStream(segment);
+				if (segment.getName().endsWith(RollingLog.SEGMENT_SUFFIX))
+					raw = new GZIPInputStream(raw, RollingLog.BUFFER);
+				try (BufferedReader lines = new BufferedReader(
+						new InputStreamReader(raw), RollingLog.BUFFER)){
+					for (String line = lines.readLine(); line != null; line = lines.readLine()){
+						int time = RollingLog.timestampOf(line);
+						if (time >= from && time <= to)
+							out.write(line + System.lineSeparator());
+					}
+				}
+			}
+		}
+	}
+	// The timestamp at the start of a log line
+	private static int timestampOf(String line){
+		int colon = line.indexOf(':');
+		try {
+			return Integer.parseInt(line.substring(0, colon < 0 ? 0 : colon));
+		} catch (NumberFormatException nfe){
+			return Integer.MIN_VALUE;
+		}
+	}
+}
@@ -0,0 +1,173 @@
+package pumpkins;
+import java.io.*;
+import java.util.concurrent.atomic.*;
+/**
+ * The ShardedPatch class splits the field into a number of independently
+ * locked patches (shards). New plants are assigned to a shard by hash, and
+ * ripening happens entirely within a plant's shard, so events on different
+ * shards never contend. Picking, composting and counting pumpkins work
+ * across all shards, keeping the same Patch interface for Jack. A large
+ * bulk planting plants the shards in parallel on the event thread pool.
+ */
+public class ShardedPatch extends Patch {
+	private final static int PARALLEL_PLANTING = 1 << 14; // Fewest plants to spread
+	private final Patch[] shards;
+	private final AtomicInteger planted;
+	private final AtomicInteger nextPick; // Counts picks to rotate the first shard
+	private final AtomicInteger nextCompost; // Counts composts to rotate the first shard
+	/**
+	 * Create a patch split into the given number of shards
+	 */
+	public ShardedPatch(Program program, Jack jack, int shards){
+		super(program, jack);
+		this.shards = new Patch[shards];
+		for (int i = 0; i < shards; i++){
+			this.shards[i] = Patch.createShard(program, jack,
+					(this.plantsBegin + shards - 1) / shards);
+			this.shards[i].setOwner(this);
+		}
+		this.planted = new AtomicInteger();
+		this.nextPick = new AtomicInteger();
+		this.nextCompost = new AtomicInteger();
+	}
+	/**
+	 * Grow a new unripe plant in the shard chosen by its hash
+	 */
+	public void plant(){
+		int hash = ShardedPatch.mix(this.planted.getAndIncrement());
+		this.shards[Math.floorMod(hash, this.shards.length)].plant();
+	}
+	/**
+	 * Grow a number of new unripe plants, each in the shard chosen by its
+	 * hash as if planted one at a time. Large plantings are shared out by
+	 * shard between the calling thread and the event thread pool.
+	 */
+	public void plant(int count){
+		int first = this.planted.getAndAdd(count);
+		int[] counts = new int[this.shards.length];
+		for (int i = 0; i < count; i++)
+			++counts[Math.floorMod(ShardedPatch.mix(first + i), this.shards.length)];
+		Planting planting = new Planting(counts);
+		if (count >= ShardedPatch.PARALLEL_PLANTING)
+			for (int i = 1; i < this.shards.length; i++)
+				this.program.runTask(planting);
+		planting.run();
+		planting.await();
+	}
+	/**
+	 * Get number of ripe plants across all shards
+	 */
+	public int getPumpkinCount(){
+		int count = 0;
+		for (Patch shard : this.shards)
+			count += shard.getPumpkinCount();
+		return count;
+	}
+	// Get number of unripe plants across the shards
+	int getUnripeCount(){
+		int count = 0;
+		for (Patch shard : this.shards)
+			count += shard.getUnripeCount();
+		return count;
+	}
+	/**
+	 * Pick a number of ripe plants, taking from each shard in turn
+	 */
+	public int pick(int quantity){
+		// Several workers may pick at once, so each takes its own turn
+		int first = Math.floorMod(this.nextPick.getAndIncrement(), this.shards.length);
+		int picked = 0;
+		for (int i = 0; i < this.shards.length && picked < quantity; i++){
+			Patch shard = this.shards[(first + i) % this.shards.length];
+			int available = Math.min(shard.getPumpkinCount(), quantity - picked);
+			if (available > 0)
+				picked += shard.pick(available);
+		}
+		return picked;
+	}
+	// Pull up to count unripe plants for compost across the shards, starting
+	// from a different shard each time as pick() does
+	int compostUnripe(int count){
+		int first = this.firstCompost();
+		int composted = 0;
+		for (int i = 0; i < this.shards.length && composted < count; i++)
+			composted += this.shards[(first + i) % this.shards.length]
+					.compostUnripe(count - composted);
+		return composted;
+	}
+	// Pull up to count ripe plants for compost across the shards, starting
+	// from a different shard each time
+	int compostRipe(int count){
+		int first = this.firstCompost();
+		int composted = 0;
+		for (int i = 0; i < this.shards.length && composted < count; i++)
+			composted += this.shards[(first + i) % this.shards.length]
+					.compostRipe(count - composted);
+		return composted;
+	}
+	// Shard to compost from first, moving on one shard each call
+	private int firstCompost(){
+		return Math.floorMod(this.nextCompost.getAndIncrement(), this.shards.length);
+	}
+	// Write the shard rotations and plant count, then each shard
+	void save(DataOutputStream out) throws IOException {
+		out.writeInt(this.nextPick.get());
+		out.writeInt(this.nextCompost.get());
+		out.writeInt(this.planted.get());
+		for (Patch shard : this.shards)
+			shard.save(out);
+	}
+	// Read back the shards written by save()
+	void restore(DataInputStream in) throws IOException {
+		this.nextPick.set(in.readInt());
+		this.nextCompost.set(in.readInt());
+		this.planted.set(in.readInt());
+		for (Patch shard : this.shards)
+			shard.restore(in);
+	}
+	// Get the shards the patch is split into
+	Patch[] getShards(){
+		return this.shards;
+	}
+	// A bulk planting's share for each shard. Each shard is planted by
+	// whichever thread claims it first, so the caller plants any shards the
+	// pool is too busy to reach, and waits only for those being planted.
+	private class Planting implements Runnable {
+		private final int[] counts;
+		private final AtomicInteger next;
+		private int finished;
+		Planting(int[] counts){
+			this.counts = counts;
+			this.next = new AtomicInteger();
+			this.finished = 0;
+		}
+		public void run(){
+			for (int i = this.next.getAndIncrement(); i < this.counts.length;
+					i = this.next.getAndIncrement()){
+				try {
+					if (this.counts[i] > 0)
+						ShardedPatch.this.shards[i].plant(this.counts[i]);
+				} finally {
+					synchronized(this){
+						++this.finished;
+						this.notifyAll();
+					}
+				}
+			}
+		}
+		synchronized void await(){
+			try {
+				while (this.finished < this.counts.length)
+					this.wait();
+			} catch (InterruptedException ie){
+				ie.printStackTrace();
+			}
+		}
+	}
+	// Scramble a plant sequence number so consecutive plants land on
+	// unrelated shards
+	private static int mix(int n){
+		n *= 0x9e3779b9;
+		return n ^ (n >>> 16);
+	}
+}
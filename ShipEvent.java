@@ -1,21 +1,24 @@
 package pumpkins;
 /**
- * The ShipEvent occurs when Jack starts the process of delivering pumpkins
- * to the shipping facility. It is followed by one or more CompleteOrderEvents.
+ * The ShipEvent occurs when one of Jack's workers starts the process of
+ * delivering pumpkins to the shipping facility. It is followed by one or
+ * more CompleteOrderEvents.
  */
 public class ShipEvent extends PumpkinEvent {
 	private final Jack jack;
+	private final Jack.Worker worker;
 	/**
 	 * Initialize an event
 	 */
-	public ShipEvent(Jack jack){
+	public ShipEvent(Jack jack, Jack.Worker worker){
 		this.jack = jack;
+		this.worker = worker;
 		this.silent = true;
 	}
 	/**
 	 * Execute event
 	 */
-	public void run(){
-		this.jack.deliverShipment();
+	protected void perform(){
+		this.jack.deliverShipment(this.worker);
 	}
 }
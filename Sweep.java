@@ -0,0 +1,350 @@
+package pumpkins;
+import java.io.*;
+import java.util.*;
+/**
+ * The Sweep class runs a program over a set of parameter points, several
+ * replications per point, and reports each point's mean order completion
+ * time with a confidence interval, its mean stash and field trajectories
+ * and its runtime. Any Program option may be varied, e.g. --stash-max,
+ * --refill-level, --stash-min, --pick-time, --seeds-per-plant,
+ * --plants-to-compost, --ripen-interval, --order-interval or
+ * --initial-plants.
+ *
+ * The points are a grid, the product of every --vary=name=v1,v2,... given,
+ * crossed with --samples random points drawn uniformly from the ranges of
+ * every --random=name=low:high given. Replication r of every point is
+ * seeded with --seed + r, so points are compared on the same random
+ * numbers. Every run is a --deterministic program on one ProgramHost, so
+ * the runs spread over --pool-size threads (default one per processor).
+ *
+ * Options: --vary=... --random=... --samples=N (default 10)
+ * --replications=N (default 5) --seed=N (default 1) --confidence=P
+ * (default 0.95) --out=FILE (default sweep.csv). Any other option is
+ * passed to every run; the stash and field are sampled every
+ * --trajectory-interval (default 100000), and --samples-file=NAME has each
+ * run also write its samples to NAME_<run>.csv and NAME_<run>.cols.
+ */
+public class Sweep {
+	private final static String[] COLUMNS = { "replications", "latency_mean",
+		"latency_ci_low", "latency_ci_high", "p99_latency", "orders", "end_time",
+		"stash", "wall_ms" };
+	private final List<String> options;
+	private final List<String> names;
+	private final List<String[]> points;
+	private final int replications;
+	private final long seed;
+	private final double confidence;
+	/**
+	 * Sweep entry point
+	 */
+	public static void main(String[] args) throws IOException {
+		Map<String, String[]> grid = new LinkedHashMap<String, String[]>();
+		Map<String, int[]> ranges = new LinkedHashMap<String, int[]>();
+		int samples = 10;
+		int replications = 5;
+		long seed = 1;
+		double confidence = 0.95;
+		String out = "sweep.csv";
+		List<String> options = new ArrayList<String>(Arrays.asList(
+				"--pool-size=" + Runtime.getRuntime().availableProcessors(),
+				"--deterministic", "--console=false", "--log-format=none",
+				"--jmx=false", "--trajectory-interval=100000"));
+		try {
+			for (String arg : args){
+				if (arg.startsWith("--vary=")){
+					String[] spec = Sweep.split(arg.substring(7), arg);
+					grid.put(spec[0], spec[1].split(","));
+				} else if (arg.startsWith("--random=")){
+					String[] spec = Sweep.split(arg.substring(9), arg);
+					String[] range = spec[1].split(":");
+					if (range.length != 2)
+						throw new IllegalArgumentException("Expected low:high in " + arg);
+					int low = Integer.parseInt(range[0]);
+					int high = Integer.parseInt(range[1]);
+					if (low > high)
+						throw new IllegalArgumentException("Empty range in " + arg);
+					ranges.put(spec[0], new int[] { low, high });
+				} else if (arg.startsWith("--samples="))
+					samples = Integer.parseInt(arg.substring(10));
+				else if (arg.startsWith("--replications="))
+					replications = Integer.parseInt(arg.substring(15));
+				else if (arg.startsWith("--seed="))
+					seed = Long.parseLong(arg.substring(7));
+				else if (arg.startsWith("--confidence="))
+					confidence = Double.parseDouble(arg.substring(13));
+				else if (arg.startsWith("--out="))
+					out = arg.substring(6);
+				else
+					options.add(arg);
+			}
+			if (replications < 1 || samples < 1)
+				throw new IllegalArgumentException(
+						"--replications and --samples must be at least 1");
+			if (confidence <= 0 || confidence >= 1)
+				throw new IllegalArgumentException("--confidence must be between 0 and 1");
+		} catch (NumberFormatException nfe){
+			System.err.println("Expected a number: " + nfe.getMessage());
+			return;
+		} catch (IllegalArgumentException iae){
+			System.err.println(iae.getMessage());
+			return;
+		}
+
+		Sweep sweep;
+		try {
+			sweep = new Sweep(options, grid, ranges, samples, replications, seed,
+					confidence);
+		} catch (IllegalArgumentException iae){
+			System.err.println(iae.getMessage());
+			return;
+		}
+		sweep.run(new File(out));
+	}
+	/**
+	 * Create a sweep over the product of the grid's values and the given
+	 * number of random points in the ranges, checking that every point is a
+	 * valid configuration. Throws IllegalArgumentException if one is not.
+	 */
+	public Sweep(List<String> options, Map<String, String[]> grid,
+			Map<String, int[]> ranges, int samples, int replications, long seed,
+			double confidence){
+		this.options = options;
+		this.names = new ArrayList<String>(grid.keySet());
+		this.names.addAll(ranges.keySet());
+		this.replications = replications;
+		this.seed = seed;
+		this.confidence = confidence;
+
+		// Grid points, varying the last option fastest
+		List<String[]> gridPoints = new ArrayList<String[]>();
+		gridPoints.add(new String[0]);
+		for (String[] values : grid.values()){
+			List<String[]> product = new ArrayList<String[]>();
+			for (String[] point : gridPoints)
+				for (String value : values){
+					String[] next = Arrays.copyOf(point, point.length + 1);
+					next[point.length] = value;
+					product.add(next);
+				}
+			gridPoints = product;
+		}
+		// Each crossed with the random points
+		RandomStream random = new RandomStream(seed);
+		this.points = new ArrayList<String[]>();
+		for (int s = 0; s < (ranges.isEmpty() ? 1 : samples); s++){
+			String[] draw = new String[ranges.size()];
+			int i = 0;
+			for (int[] range : ranges.values())
+				draw[i++] = Integer.toString(random.nextInt(range[0], range[1] + 1));
+			for (String[] point : gridPoints){
+				String[] next = Arrays.copyOf(point, this.names.size());
+				System.arraycopy(draw, 0, next, point.length, draw.length);
+				this.points.add(next);
+			}
+		}
+		for (String[] point : this.points)
+			this.configure(point, 0);
+	}
+	/**
+	 * Run every replication of every point and write the results to a file,
+	 * printing each point's summary as the whole sweep finishes
+	 */
+	public void run(File out) throws IOException {
+		Config hostConfig = this.configure(new String[0], 0);
+		ProgramHost host = new ProgramHost(hostConfig, false);
+		int limit = 2 * hostConfig.getPoolSize();
+		Map<Integer, Integer> pointOf = new HashMap<Integer, Integer>();
+		long start = System.nanoTime();
+		try {
+			for (int p = 0; p < this.points.size(); p++)
+				for (int r = 0; r < this.replications; r++){
+					// Bound the programs built but not yet run
+					host.await(limit);
+					Program program = host.add(this.configure(this.points.get(p), r));
+					pointOf.put(program.getId(), p);
+				}
+			host.await();
+		} finally {
+			host.shutdown();
+		}
+
+		List<List<ProgramHost.Result>> byPoint = new ArrayList<List<ProgramHost.Result>>();
+		for (int p = 0; p < this.points.size(); p++)
+			byPoint.add(new ArrayList<ProgramHost.Result>());
+		for (ProgramHost.Result result : host.getResults())
+			byPoint.get(pointOf.get(result.getId())).add(result);
+		int interval = 0, samples = 0;
+		for (ProgramHost.Result result : host.getResults()){
+			Trajectory t = result.getTrajectory();
+			if (t != null && t.size() > 0){
+				interval = t.getInterval();
+				samples = Math.max(samples, t.getTime(t.size() - 1) / interval);
+			}
+		}
+
+		List<String> header = new ArrayList<String>(this.names);
+		header.addAll(Arrays.asList(Sweep.COLUMNS));
+		System.out.println(String.join("\t", header));
+		for (int k = 1; k <= samples; k++)
+			header.add("stash_" + (long)k * interval);
+		for (int k = 1; k <= samples; k++)
+			header.add("field_" + (long)k * interval);
+		try (PrintWriter csv = new PrintWriter(new FileWriter(out))){
+			csv.println(String.join(",", header));
+			for (int p = 0; p < this.points.size(); p++){
+				List<String> row = this.summarize(this.points.get(p), byPoint.get(p));
+				System.out.println(String.join("\t", row));
+				row.addAll(Sweep.trajectory(byPoint.get(p), interval, samples));
+				csv.println(String.join(",", row));
+			}
+		}
+		System.out.println(this.points.size() + " points, " + this.replications +
+				" replications in " + (System.nanoTime() - start) / 1000000 + " ms");
+	}
+	// The configuration of one replication of a point
+	private Config configure(String[] point, int replication){
+		List<String> args = new ArrayList<String>(this.options);
+		for (int i = 0; i < point.length; i++)
+			args.add("--" + this.names.get(i) + "=" + point[i]);
+		return Config.parse(args.toArray(new String[0]))
+				.setSeed(this.seed + replication);
+	}
+	// A point's values, then the mean of each result over its replications,
+	// with the confidence interval of the mean order completion time
+	private List<String> summarize(String[] point, List<ProgramHost.Result> results){
+		int n = results.size();
+		double latency = 0, squares = 0, p99 = 0, orders = 0, end = 0, stash = 0, wall = 0;
+		for (ProgramHost.Result r : results){
+			double mean = r.getLatency().getMean();
+			latency += mean;
+			squares += mean * mean;
+			p99 += r.getLatency().getPercentile(99);
+			orders += r.getLatency().getCount();
+			end += r.getEndTime();
+			stash += r.getStash();
+			wall += r.getWallMillis();
+		}
+		latency /= n;
+		String low = "", high = "";
+		if (n > 1){
+			double deviation = Math.sqrt(Math.max(0,
+					(squares - n * latency * latency) / (n - 1)));
+			double half = Sweep.criticalT(this.confidence, n - 1) * deviation /
+					Math.sqrt(n);
+			low = Sweep.format(latency - half);
+			high = Sweep.format(latency + half);
+		}
+		List<String> row = new ArrayList<String>(Arrays.asList(point));
+		row.addAll(Arrays.asList(Integer.toString(n), Sweep.format(latency), low,
+				high, Sweep.format(p99 / n), Sweep.format(orders / n),
+				Sweep.format(end / n), Sweep.format(stash / n),
+				Sweep.format(wall / n)));
+		return row;
+	}
+	// Mean stash at each sample time, then mean field, over the replications
+	// that reached it
+	private static List<String> trajectory(List<ProgramHost.Result> results,
+			int interval, int samples){
+		double[] stash = new double[samples + 1];
+		double[] field = new double[samples + 1];
+		int[] count = new int[samples + 1];
+		for (ProgramHost.Result r : results){
+			Trajectory t = r.getTrajectory();
+			for (int i = 0; t != null && i < t.size(); i++){
+				int k = t.getTime(i) / interval;
+				if (k < 1 || k > samples)
+					continue;
+				stash[k] += t.getStash(i);
+				field[k] += t.getField(i);
+				++count[k];
+			}
+		}
+		List<String> row = new ArrayList<String>();
+		for (int k = 1; k <= samples; k++)
+			row.add(count[k] > 0 ? Sweep.format(stash[k] / count[k]) : "");
+		for (int k = 1; k <= samples; k++)
+			row.add(count[k] > 0 ? Sweep.format(field[k] / count[k]) : "");
+		return row;
+	}
+	// Split name=value, rejecting an option without a value
+	private static String[] split(String spec, String arg){
+		int split = spec.indexOf('=');
+		if (split <= 0 || split == spec.length() - 1)
+			throw new IllegalArgumentException("Expected name=values in " + arg);
+		return new String[] { spec.substring(0, split), spec.substring(split + 1) };
+	}
+	// Format a number, whole numbers without decimals
+	private static String format(double value){
+		if (value == Math.rint(value) && Math.abs(value) < 1e15)
+			return Long.toString((long)value);
+		return String.format(Locale.ROOT, "%.2f", value);
+	}
+	// Two-sided critical value of Student's t distribution with df degrees
+	// of freedom: |T| exceeds it with probability 1 - confidence
+	private static double criticalT(double confidence, int df){
+		double low = 0, high = 1;
+		while (Sweep.tTail(high, df) > 1 - confidence)
+			high *= 2;
+		for (int i = 0; i < 100; i++){
+			double mid = (low + high) / 2;
+			if (Sweep.tTail(mid, df) > 1 - confidence)
+				low = mid;
+			else
+				high = mid;
+		}
+		return (low + high) / 2;
+	}
+	// Probability that |T| > t, for t >= 0
+	private static double tTail(double t, int df){
+		return Sweep.incompleteBeta(df / (df + t * t), df / 2.0, 0.5);
+	}
+	// Regularized incomplete beta function, from its continued fraction
+	private static double incompleteBeta(double x, double a, double b){
+		if (x <= 0)
+			return 0;
+		if (x >= 1)
+			return 1;
+		double front = Math.exp(Sweep.lnGamma(a + b) - Sweep.lnGamma(a) -
+				Sweep.lnGamma(b) + a * Math.log(x) + b * Math.log(1 - x));
+		if (x < (a + 1) / (a + b + 2))
+			return front * Sweep.betaFraction(x, a, b) / a;
+		return 1 - front * Sweep.betaFraction(1 - x, b, a) / b;
+	}
+	// Continued fraction for the incomplete beta function, by Lentz's method
+	private static double betaFraction(double x, double a, double b){
+		double tiny = 1e-300;
+		double c = 1;
+		double d = 1 - (a + b) * x / (a + 1);
+		d = 1 / (Math.abs(d) < tiny ? tiny : d);
+		double h = d;
+		for (int m = 1; m <= 300; m++){
+			for (int step = 0; step < 2; step++){
+				double aa = step == 0 ?
+						m * (b - m) * x / ((a + 2 * m - 1) * (a + 2 * m)) :
+						-(a + m) * (a + b + m) * x / ((a + 2 * m) * (a + 2 * m + 1));
+				d = 1 + aa * d;
+				d = 1 / (Math.abs(d) < tiny ? tiny : d);
+				c = 1 + aa / c;
+				if (Math.abs(c) < tiny)
+					c = tiny;
+				h *= d * c;
+				if (step == 1 && Math.abs(d * c - 1) < 1e-12)
+					return h;
+			}
+		}
+		return h;
+	}
+	// Natural log of the gamma function, by the Lanczos approximation
+	private static double lnGamma(double x){
+		double[] coefficients = { 76.18009172947146, -86.50532032941677,
+			24.01409824083091, -1.231739572450155, 0.1208650973866179e-2,
+			-0.5395239384953e-5 };
+		double y = x;
+		double tmp = x + 5.5;
+		tmp -= (x + 0.5) * Math.log(tmp);
+		double series = 1.000000000190015;
+		for (double c : coefficients)
+			series += c / ++y;
+		return -tmp + Math.log(2.5066282746310005 * series / x);
+	}
+}
@@ -15,7 +15,7 @@ public class TimerExpiredEvent extends PumpkinEvent {
 	/*
 	 * Execute event
 	 */
-	public void run(){
+	protected void perform(){
 		this.jack.timerExpired();
 	}
 }
@@ -0,0 +1,198 @@
+package pumpkins;
+import java.util.*;
+/**
+ * The TimingWheel class is a hierarchical timing wheel that holds the
+ * clock's pending timers. Each level is a ring of slots covering 256 times
+ * the span of the level below it. A timer is filed in the lowest level that
+ * can hold its deadline and is cascaded down a level each time the wheel
+ * comes around to its slot, so adding a timer and expiring one are O(1)
+ * amortized, and a tick with nothing due touches a single empty slot.
+ * Expired timers handed back with recycle() are reused by add(), so a
+ * wheel in steady state allocates nothing.
+ */
+public class TimingWheel {
+	private final static int SLOT_BITS = 8;
+	private final static int SLOTS = 1 << SLOT_BITS;
+	private final static int SLOT_MASK = SLOTS - 1;
+	private final static int LEVELS = 4;
+	private final static long MAX_DELAY = (1L << (SLOT_BITS * LEVELS)) - 1;
+	private final Timer[][] heads;
+	private final Timer[][] tails;
+	private long current;
+	private int size;
+	private long sequence; // Number of timers ever added
+	private Timer free; // Recycled timers, linked through Timer.next
+	/**
+	 * Create an empty wheel whose first tick is at time 0
+	 */
+	public TimingWheel(){
+		this.heads = new Timer[TimingWheel.LEVELS][TimingWheel.SLOTS];
+		this.tails = new Timer[TimingWheel.LEVELS][TimingWheel.SLOTS];
+		this.current = 0;
+		this.size = 0;
+		this.sequence = 0;
+	}
+	/**
+	 * Schedule an event to expire at the given time. Deadlines that have
+	 * already been passed expire at the next tick. Each timer is numbered
+	 * in the order it was added.
+	 */
+	public Timer add(PumpkinEvent event, long deadline){
+		Timer t = this.free;
+		if (t == null)
+			t = new Timer();
+		else
+			this.free = t.next;
+		t.event = event;
+		t.deadline = Math.max(deadline, this.current);
+		t.sequence = ++this.sequence;
+		this.insert(t);
+		++this.size;
+		return t;
+	}
+	/**
+	 * Expire every timer due at or before the given time and return them as
+	 * a linked list (follow Timer.next), oldest tick first
+	 */
+	public Timer advance(long time){
+		Timer head = null, tail = null;
+		for (; this.current <= time; ++this.current){
+			if ((this.current & TimingWheel.SLOT_MASK) == 0)
+				this.cascade(1);
+			int slot = (int)(this.current & TimingWheel.SLOT_MASK);
+			Timer due = this.heads[0][slot];
+			if (due == null)
+				continue;
+			this.heads[0][slot] = null;
+			if (head == null)
+				head = due;
+			else
+				tail.next = due;
+			tail = this.tails[0][slot];
+			this.tails[0][slot] = null;
+		}
+		for (Timer t = head; t != null; t = t.next)
+			--this.size;
+		return head;
+	}
+	/**
+	 * Get the earliest time at which advancing the wheel may expire a timer,
+	 * or -1 if no timers are pending. This is either the next occupied slot
+	 * in the current rotation of the lowest level, or the end of the
+	 * rotation where the next cascade happens, so idle time can be skipped
+	 * without missing any deadline.
+	 */
+	public long nextExpiry(){
+		if (this.size == 0)
+			return -1;
+		long t = this.current;
+		if ((t & TimingWheel.SLOT_MASK) == 0)
+			return t;
+		do {
+			if (this.heads[0][(int)(t & TimingWheel.SLOT_MASK)] != null)
+				return t;
+			++t;
+		} while ((t & TimingWheel.SLOT_MASK) != 0);
+		return t;
+	}
+	/**
+	 * Return a list of expired timers, as given by advance(), for add() to
+	 * reuse. The caller must be done with them and their events.
+	 */
+	public void recycle(Timer head){
+		if (head == null)
+			return;
+		Timer tail = head;
+		tail.event = null;
+		while (tail.next != null){
+			tail = tail.next;
+			tail.event = null;
+		}
+		tail.next = this.free;
+		this.free = head;
+	}
+	/**
+	 * Get every pending timer, in no particular order
+	 */
+	public List<Timer> pending(){
+		List<Timer> pending = new ArrayList<Timer>(this.size);
+		for (Timer[] level : this.heads)
+			for (Timer head : level)
+				for (Timer t = head; t != null; t = t.next)
+					pending.add(t);
+		return pending;
+	}
+	/**
+	 * Move an empty wheel to a new current time
+	 */
+	public void reset(long current){
+		if (this.size != 0)
+			throw new IllegalStateException("Cannot reset a wheel with pending timers");
+		this.current = current;
+	}
+	/**
+	 * Get the next time the wheel has not yet processed
+	 */
+	public long getCurrent(){
+		return this.current;
+	}
+	/**
+	 * Get number of timers that have not yet expired
+	 */
+	public int size(){
+		return this.size;
+	}
+	// File a timer in the slot that matches its distance from current time
+	private void insert(Timer t){
+		long delay = Math.min(t.deadline - this.current, TimingWheel.MAX_DELAY);
+		int level = 0;
+		while (delay >= TimingWheel.SLOTS && level < TimingWheel.LEVELS - 1){
+			delay >>>= TimingWheel.SLOT_BITS;
+			++level;
+		}
+		int slot = (int)((t.deadline >>> (level * TimingWheel.SLOT_BITS)) &
+				TimingWheel.SLOT_MASK);
+		t.next = null;
+		if (this.heads[level][slot] == null)
+			this.heads[level][slot] = t;
+		else
+			this.tails[level][slot].next = t;
+		this.tails[level][slot] = t;
+	}
+	// Redistribute the current slot of a level into the levels below it,
+	// after first cascading the level above if this level has wrapped
+	private void cascade(int level){
+		if (level >= TimingWheel.LEVELS)
+			return;
+		int slot = (int)((this.current >>> (level * TimingWheel.SLOT_BITS)) &
+				TimingWheel.SLOT_MASK);
+		if (slot == 0)
+			this.cascade(level + 1);
+		Timer t = this.heads[level][slot];
+		this.heads[level][slot] = null;
+		this.tails[level][slot] = null;
+		while (t != null){
+			Timer next = t.next;
+			this.insert(t);
+			t = next;
+		}
+	}
+	/**
+	 * A pending event and the time at which it is due
+	 */
+	public static class Timer {
+		private PumpkinEvent event;
+		private long deadline;
+		private long sequence;
+		Timer next;
+		PumpkinEvent getEvent(){
+			return this.event;
+		}
+		long getDeadline(){
+			return this.deadline;
+		}
+		long getSequence(){
+			return this.sequence;
+		}
+	}
+}
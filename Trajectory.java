@@ -0,0 +1,182 @@
+package pumpkins;
+import java.io.*;
+import java.util.*;
+/**
+ * The Trajectory class records the number of pumpkins in Jack's stash and
+ * ripe in the field, the unripe plants, and Jack's open and in-transit
+ * orders at fixed intervals of program time, so runs can be compared by
+ * how their stock rose and fell as well as by their totals. Samples are
+ * taken by a TrajectoryEvent at whole multiples of the interval, and each
+ * quantity is kept in a column of its own.
+ *
+ * A trajectory can be written as a CSV file with one row per sample, and
+ * as a binary file of whole columns: the magic number "PKS1", the
+ * interval, the number of columns and their names, the number of samples,
+ * then each column's values in turn. Together with --log-format=none this
+ * gives the stash and field over time without the per-event log.
+ */
+public class Trajectory {
+	final static String CSV_SUFFIX = ".csv";
+	final static String COLUMNS_SUFFIX = ".cols";
+	private final static int MAGIC = 0x504b5331; // "PKS1"
+	private final static int BUFFER = 1 << 16;
+	private final static String[] COLUMNS = { "time", "stash", "field",
+		"unripe", "open_orders", "in_transit" };
+	// Positions of the columns
+	private final static int TIME = 0;
+	private final static int STASH = 1;
+	private final static int FIELD = 2;
+	private final static int UNRIPE = 3;
+	private final static int OPEN_ORDERS = 4;
+	private final static int IN_TRANSIT = 5;
+	private final int interval;
+	private int[][] columns;
+	private int size;
+	/**
+	 * Create an empty trajectory sampled at the given interval
+	 */
+	public Trajectory(int interval){
+		this.interval = interval;
+		this.columns = new int[Trajectory.COLUMNS.length][16];
+		this.size = 0;
+	}
+	/**
+	 * Read a trajectory from a binary file written by writeColumns()
+	 */
+	public static Trajectory read(File file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file), Trajectory.BUFFER))){
+			if (in.readInt() != Trajectory.MAGIC)
+				throw new IOException("Not a trajectory file");
+			Trajectory t = new Trajectory(in.readInt());
+			int count = in.readInt();
+			if (count != Trajectory.COLUMNS.length)
+				throw new IOException("Unexpected trajectory columns: " + count);
+			for (int c = 0; c < count; c++)
+				if (!in.readUTF().equals(Trajectory.COLUMNS[c]))
+					throw new IOException("Unexpected trajectory column " + c);
+			t.size = in.readInt();
+			for (int c = 0; c < count; c++){
+				t.columns[c] = new int[Math.max(t.size, 16)];
+				for (int i = 0; i < t.size; i++)
+					t.columns[c][i] = in.readInt();
+			}
+			return t;
+		}
+	}
+	/**
+	 * Get time between samples
+	 */
+	public int getInterval(){
+		return this.interval;
+	}
+	/**
+	 * Get number of samples taken
+	 */
+	public synchronized int size(){
+		return this.size;
+	}
+	/**
+	 * Get the time at which a sample was taken
+	 */
+	public synchronized int getTime(int sample){
+		return this.columns[Trajectory.TIME][sample];
+	}
+	/**
+	 * Get the stash count in a sample
+	 */
+	public synchronized int getStash(int sample){
+		return this.columns[Trajectory.STASH][sample];
+	}
+	/**
+	 * Get the number of ripe pumpkins in the field in a sample
+	 */
+	public synchronized int getField(int sample){
+		return this.columns[Trajectory.FIELD][sample];
+	}
+	/**
+	 * Get the number of unripe plants in the patch in a sample
+	 */
+	public synchronized int getUnripe(int sample){
+		return this.columns[Trajectory.UNRIPE][sample];
+	}
+	/**
+	 * Get the number of orders waiting to be shipped in a sample
+	 */
+	public synchronized int getOpenOrders(int sample){
+		return this.columns[Trajectory.OPEN_ORDERS][sample];
+	}
+	/**
+	 * Get the number of orders shipped but not yet delivered in a sample
+	 */
+	public synchronized int getInTransit(int sample){
+		return this.columns[Trajectory.IN_TRANSIT][sample];
+	}
+	/**
+	 * Write the samples as CSV, one row per sample
+	 */
+	public synchronized void writeCsv(Writer out) throws IOException {
+		StringBuilder row = new StringBuilder();
+		row.append(String.join(",", Trajectory.COLUMNS));
+		for (int i = 0; i < this.size; i++){
+			row.append(System.lineSeparator());
+			for (int c = 0; c < this.columns.length; c++){
+				if (c > 0)
+					row.append(',');
+				row.append(this.columns[c][i]);
+			}
+			if (row.length() >= Trajectory.BUFFER){
+				out.append(row);
+				row.setLength(0);
+			}
+		}
+		row.append(System.lineSeparator());
+		out.append(row);
+	}
+	/**
+	 * Write the samples in the binary format, one column after another
+	 */
+	public synchronized void writeColumns(DataOutputStream out) throws IOException {
+		out.writeInt(Trajectory.MAGIC);
+		out.writeInt(this.interval);
+		out.writeInt(this.columns.length);
+		for (String name : Trajectory.COLUMNS)
+			out.writeUTF(name);
+		out.writeInt(this.size);
+		for (int[] column : this.columns)
+			for (int i = 0; i < this.size; i++)
+				out.writeInt(column[i]);
+	}
+	// Write the CSV and binary files for the given name, adding the
+	// suffix of each
+	void write(String name) throws IOException {
+		try (Writer out = new BufferedWriter(new FileWriter(name +
+				Trajectory.CSV_SUFFIX), Trajectory.BUFFER)){
+			this.writeCsv(out);
+		}
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(name + Trajectory.COLUMNS_SUFFIX), Trajectory.BUFFER))){
+			this.writeColumns(out);
+		}
+	}
+	// Record a sample, growing the columns as needed
+	synchronized void sample(int time, int stash, int field, int unripe,
+			int openOrders, int inTransit){
+		if (this.size == this.columns[0].length){
+			int capacity = 2 * this.size;
+			for (int c = 0; c < this.columns.length; c++)
+				this.columns[c] = Arrays.copyOf(this.columns[c], capacity);
+		}
+		int i = this.size++;
+		this.columns[Trajectory.TIME][i] = time;
+		this.columns[Trajectory.STASH][i] = stash;
+		this.columns[Trajectory.FIELD][i] = field;
+		this.columns[Trajectory.UNRIPE][i] = unripe;
+		this.columns[Trajectory.OPEN_ORDERS][i] = openOrders;
+		this.columns[Trajectory.IN_TRANSIT][i] = inTransit;
+	}
+	// Time until the next whole multiple of the interval after the given time
+	int delayAfter(int time){
+		return this.interval - time % this.interval;
+	}
+}
@@ -0,0 +1,36 @@
+package pumpkins;
+/**
+ * The TrajectoryEvent occurs at regular intervals while orders come in. It
+ * records Jack's stash and orders and the ripe and unripe plants in the
+ * patch in the program's Trajectory and sets its own timer again for the
+ * next sample.
+ */
+public class TrajectoryEvent extends PumpkinEvent {
+	private final Program program;
+	private final Jack jack;
+	private final Patch patch;
+	private final Trajectory trajectory;
+	/**
+	 * Create an event
+	 */
+	public TrajectoryEvent(Program program, Jack jack, Patch patch,
+			Trajectory trajectory){
+		this.program = program;
+		this.jack = jack;
+		this.patch = patch;
+		this.trajectory = trajectory;
+		this.silent = true;
+	}
+	/**
+	 * Execute event
+	 */
+	protected void perform(){
+		int time = this.program.getTimestamp();
+		this.trajectory.sample(time, this.jack.getStashCount(),
+				this.patch.getPumpkinCount(), this.patch.getUnripeCount(),
+				this.jack.getOpenOrderCount(), this.jack.getInTransitCount());
+		if (this.program.timerExpired())
+			return;
+		this.program.setTimer(this, this.trajectory.delayAfter(time));
+	}
+}
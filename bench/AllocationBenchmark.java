@@ -0,0 +1,111 @@
+package pumpkins;
+import java.lang.management.*;
+import java.util.*;
+/**
+ * The AllocationBenchmark measures the bytes a simulation allocates per
+ * event once it is running, leaving out the cost of planting the patch and
+ * starting threads. Each engine runs the same seeded simulation twice, for
+ * --time-units and for twice that, and the extra bytes allocated by the
+ * longer run are divided by its extra events. Programs run headlessly with
+ * no log and no JMX, so the figure is the cost of dispatching and
+ * performing events alone.
+ *
+ * Allocation is read from the JVM's per-thread counters (see
+ * ScalingBenchmark.AllocationSampler). To see where the remaining bytes
+ * come from, run it under JFR and print the allocation samples:
+ *
+ *   java -XX:StartFlightRecording=filename=alloc.jfr,settings=profile \
+ *       -cp out pumpkins.AllocationBenchmark --engines=deterministic
+ *   jfr print --events jdk.ObjectAllocationSample alloc.jfr
+ *
+ * Options: --engines=deterministic,fixed,fork-join,... (default
+ * deterministic and fixed) --time-units=N (default 500000) --seed=N. Any
+ * other --name=value is passed to every run, e.g. --plant-store=array.
+ */
+public class AllocationBenchmark {
+	private final static String DETERMINISTIC = "deterministic";
+	private final static String[] COLUMNS = { "engine", "events", "extra_events",
+		"extra_bytes", "bytes_per_event", "gc_count" };
+	/**
+	 * Benchmark entry point
+	 */
+	public static void main(String[] args){
+		List<String> engines = Arrays.asList(AllocationBenchmark.DETERMINISTIC,
+				EventExecutors.FIXED);
+		int timeUnits = 500000;
+		long seed = 1;
+		List<String> options = new ArrayList<String>();
+		for (String arg : args){
+			if (arg.startsWith("--engines="))
+				engines = Arrays.asList(arg.substring(10).split(","));
+			else if (arg.startsWith("--time-units="))
+				timeUnits = Integer.parseInt(arg.substring(13));
+			else if (arg.startsWith("--seed="))
+				seed = Long.parseLong(arg.substring(7));
+			else
+				options.add(arg);
+		}
+
+		System.out.println(String.join("\t", AllocationBenchmark.COLUMNS));
+		for (String engine : engines){
+			Config shortRun, longRun;
+			try {
+				shortRun = AllocationBenchmark.configure(options, engine, seed)
+						.setTimeUnits(timeUnits);
+				longRun = AllocationBenchmark.configure(options, engine, seed)
+						.setTimeUnits(2 * timeUnits);
+			} catch (IllegalArgumentException iae){
+				System.err.println(iae.getMessage());
+				continue;
+			}
+			// Once untimed, so class loading and compilation are not charged
+			AllocationBenchmark.run(shortRun);
+			long[] first = AllocationBenchmark.run(shortRun);
+			long[] second = AllocationBenchmark.run(longRun);
+			long events = second[0] - first[0];
+			long bytes = second[1] - first[1];
+			System.out.println(engine + "\t" + second[0] + "\t" + events + "\t" +
+					bytes + "\t" + String.format(Locale.ROOT, "%.1f",
+					events > 0 ? (double)bytes / events : 0.0) + "\t" + second[2]);
+		}
+	}
+	// A quiet, seeded configuration for the engine: the single-threaded one
+	// or an executor
+	private static Config configure(List<String> options, String engine, long seed){
+		Config config = new Config().setVirtualTime(true).setConsole(false)
+				.setTextLog(false).setJournal(false).setJmx(false).setSeed(seed);
+		if (engine.equals(AllocationBenchmark.DETERMINISTIC))
+			config.setDeterministic(true);
+		else
+			config.set("executor", engine);
+		for (String arg : options){
+			if (!arg.startsWith("--"))
+				throw new IllegalArgumentException("Unexpected argument: " + arg);
+			int split = arg.indexOf('=');
+			config.set(split < 0 ? arg.substring(2) : arg.substring(2, split),
+					split < 0 ? "true" : arg.substring(split + 1));
+		}
+		return config;
+	}
+	// Run one simulation. Returns the events run, the bytes allocated and
+	// the number of garbage collections.
+	private static long[] run(Config config){
+		System.gc();
+		long gcCount = 0;
+		for (GarbageCollectorMXBean gc :
+				ManagementFactory.getGarbageCollectorMXBeans())
+			gcCount -= gc.getCollectionCount();
+		ScalingBenchmark.AllocationSampler sampler =
+				new ScalingBenchmark.AllocationSampler();
+		Thread samplerThread = new Thread(sampler, "allocation-sampler");
+		samplerThread.setDaemon(true);
+		samplerThread.start();
+		Program program = new Program(config);
+		program.execute();
+		long allocated = sampler.stop(samplerThread);
+		for (GarbageCollectorMXBean gc :
+				ManagementFactory.getGarbageCollectorMXBeans())
+			gcCount += gc.getCollectionCount();
+		return new long[] { program.getEventCount(), allocated, gcCount };
+	}
+}
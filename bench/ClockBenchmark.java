@@ -0,0 +1,80 @@
+package pumpkins;
+import java.util.*;
+/**
+ * The ClockBenchmark measures the cost of the clock's timing wheel as the
+ * number of pending timers grows. For each size it reports the cost of
+ * inserting a timer, the cost of a tick with nothing due, and the cost of
+ * expiring a timer (including the cascades that bring it down the wheel and
+ * the ticks in between, which are spread so there is about one per timer).
+ * Run with a heap large enough for the largest size, e.g. -Xmx2g for 10M.
+ */
+public class ClockBenchmark {
+	private final static int[] DEFAULT_SIZES = {
+		1000, 10000, 100000, 1000000, 10000000 };
+	private final static int IDLE_TICKS = 1 << 20;
+	private final static int MIN_SPAN = 1 << 16;
+	private final static PumpkinEvent EVENT = new PumpkinEvent(){
+		protected void perform(){}
+	};
+	/**
+	 * Benchmark entry point. Optional arguments are the timer counts to test.
+	 */
+	public static void main(String[] args){
+		int[] sizes = ClockBenchmark.DEFAULT_SIZES;
+		if (args.length > 0){
+			sizes = new int[args.length];
+			for (int i = 0; i < args.length; i++)
+				sizes[i] = Integer.parseInt(args[i]);
+		}
+		// Warm up the JIT on a small wheel before measuring
+		for (int i = 0; i < 5; i++)
+			ClockBenchmark.measure(100000);
+		System.out.printf("%12s %14s %14s %14s%n", "timers",
+				"insert ns/op", "idle ns/tick", "expire ns/op");
+		for (int size : sizes){
+			double[] r = ClockBenchmark.measure(size);
+			System.out.printf("%12d %14.1f %14.1f %14.1f%n",
+					size, r[0], r[1], r[2]);
+		}
+	}
+	// Fill a wheel with timers due after the idle window, tick through the
+	// idle window, then tick until all timers have expired
+	private static double[] measure(int size){
+		Random random = new Random(size);
+		TimingWheel wheel = new TimingWheel();
+		int span = Math.max(size, ClockBenchmark.MIN_SPAN);
+		long horizon = ClockBenchmark.IDLE_TICKS + span;
+
+		long start = System.nanoTime();
+		for (int i = 0; i < size; i++){
+			long deadline = ClockBenchmark.IDLE_TICKS + random.nextInt(span);
+			wheel.add(ClockBenchmark.EVENT, deadline);
+		}
+		long inserted = System.nanoTime();
+
+		int fired = 0;
+		for (long t = 0; t < ClockBenchmark.IDLE_TICKS; t++)
+			fired += ClockBenchmark.count(wheel.advance(t));
+		long idled = System.nanoTime();
+
+		for (long t = ClockBenchmark.IDLE_TICKS; t < horizon; t++)
+			fired += ClockBenchmark.count(wheel.advance(t));
+		long expired = System.nanoTime();
+
+		if (fired != size || wheel.size() != 0)
+			throw new IllegalStateException("Expected " + size + 
+					" timers to fire but " + fired + " did");
+		return new double[] {
+			(double)(inserted - start) / size,
+			(double)(idled - inserted) / ClockBenchmark.IDLE_TICKS,
+			(double)(expired - idled) / size
+		};
+	}
+	// Count timers in an expired list
+	private static int count(TimingWheel.Timer t){
+		int n = 0;
+		for (; t != null; t = t.next)
+			++n;
+		return n;
+	}
+}
@@ -0,0 +1,175 @@
+package pumpkins;
+import java.util.*;
+/**
+ * The OrderQueueBenchmark measures the cost of Jack's order backlog as it
+ * grows. For each size it adds that many orders from a number of producer
+ * threads at once, then drains them all in shipments, reporting the cost
+ * per order of each step. The OrderQueue is compared with the structures
+ * it replaced: a synchronized ArrayDeque, and a synchronized ArrayList
+ * drained from the front with iterator.remove(), whose drains are
+ * quadratic in the backlog and are skipped above --list-limit orders.
+ *
+ * Options: --producers=N threads adding orders (default 4), --shipment=N
+ * orders taken per drain (default 1000), --list-limit=N (default 100000).
+ * Other arguments are the backlog sizes to test (default 10^3 to 10^6).
+ */
+public class OrderQueueBenchmark {
+	private final static int[] DEFAULT_SIZES = { 1000, 10000, 100000, 1000000 };
+	private final static String[] COLUMNS = { "orders", "queue add", "queue drain",
+		"deque add", "deque drain", "list add", "list drain" };
+	/**
+	 * Benchmark entry point
+	 */
+	public static void main(String[] args){
+		int producers = 4;
+		int shipment = 1000;
+		int listLimit = 100000;
+		List<Integer> sizes = new ArrayList<Integer>();
+		for (String arg : args){
+			if (arg.startsWith("--producers="))
+				producers = Integer.parseInt(arg.substring(12));
+			else if (arg.startsWith("--shipment="))
+				shipment = Integer.parseInt(arg.substring(11));
+			else if (arg.startsWith("--list-limit="))
+				listLimit = Integer.parseInt(arg.substring(13));
+			else
+				sizes.add(Integer.parseInt(arg));
+		}
+		if (sizes.isEmpty())
+			for (int size : OrderQueueBenchmark.DEFAULT_SIZES)
+				sizes.add(size);
+
+		Program program = new Program(new Config().setVirtualTime(true)
+				.setConsole(false).setTextLog(false).setJmx(false));
+		Jack jack = new Jack(program);
+		// Warm up the JIT on a small backlog before measuring
+		for (int i = 0; i < 20; i++)
+			for (Backlog backlog : OrderQueueBenchmark.backlogs(jack))
+				OrderQueueBenchmark.measure(jack, backlog, 10000, producers, shipment);
+		System.out.print(String.format("%10s", OrderQueueBenchmark.COLUMNS[0]));
+		for (int i = 1; i < OrderQueueBenchmark.COLUMNS.length; i++)
+			System.out.print(String.format(" %12s", OrderQueueBenchmark.COLUMNS[i]));
+		System.out.println("   (ns/order)");
+		for (int size : sizes){
+			System.out.print(String.format("%10d", size));
+			for (Backlog backlog : OrderQueueBenchmark.backlogs(jack)){
+				if (backlog instanceof ListBacklog && size > listLimit){
+					System.out.print(String.format(" %12s %12s", "-", "-"));
+					continue;
+				}
+				double[] r = OrderQueueBenchmark.measure(jack, backlog, size,
+						producers, shipment);
+				System.out.print(String.format(Locale.ROOT, " %12.1f %12.1f", r[0], r[1]));
+			}
+			System.out.println();
+		}
+		program.shutdown();
+	}
+	// Fill a backlog from the producer threads, then drain it in shipments.
+	// Returns the nanoseconds per order of each.
+	private static double[] measure(Jack jack, Backlog backlog, int size,
+			int producers, int shipment){
+		Jack.Order[] orders = new Jack.Order[size];
+		for (int i = 0; i < size; i++)
+			orders[i] = jack.new Order(i);
+		Thread[] threads = new Thread[producers];
+		for (int t = 0; t < producers; t++){
+			int from = (int)((long)size * t / producers);
+			int to = (int)((long)size * (t + 1) / producers);
+			threads[t] = new Thread(new Runnable(){
+				public void run(){
+					for (int i = from; i < to; i++)
+						backlog.add(orders[i]);
+				}
+			});
+		}
+		long start = System.nanoTime();
+		for (Thread thread : threads)
+			thread.start();
+		try {
+			for (Thread thread : threads)
+				thread.join();
+		} catch (InterruptedException ie){
+			ie.printStackTrace();
+		}
+		long added = System.nanoTime();
+
+		List<Jack.Order> fulfilled = new ArrayList<Jack.Order>(shipment);
+		int drained = 0;
+		while (drained < size){
+			fulfilled.clear();
+			drained += backlog.drain(fulfilled, shipment);
+		}
+		long finished = System.nanoTime();
+		return new double[] {
+			(double)(added - start) / size,
+			(double)(finished - added) / size
+		};
+	}
+	// A fresh backlog of each kind, in the order of the columns
+	private static Backlog[] backlogs(Jack jack){
+		return new Backlog[] {
+			new QueueBacklog(new OrderQueue(jack)),
+			new DequeBacklog(),
+			new ListBacklog()
+		};
+	}
+	// A structure holding open orders
+	private static abstract class Backlog {
+		abstract void add(Jack.Order order);
+		abstract int drain(List<Jack.Order> into, int max);
+	}
+	// The lock-free OrderQueue Jack uses
+	private static class QueueBacklog extends Backlog {
+		private final OrderQueue queue;
+		QueueBacklog(OrderQueue queue){
+			this.queue = queue;
+		}
+		void add(Jack.Order order){
+			this.queue.add(order);
+		}
+		int drain(List<Jack.Order> into, int max){
+			return this.queue.drain(into, max);
+		}
+	}
+	// An ArrayDeque under its own monitor, polled from the front
+	private static class DequeBacklog extends Backlog {
+		private final ArrayDeque<Jack.Order> deque = new ArrayDeque<Jack.Order>();
+		void add(Jack.Order order){
+			synchronized(this.deque){
+				this.deque.add(order);
+			}
+		}
+		int drain(List<Jack.Order> into, int max){
+			int taken = 0;
+			synchronized(this.deque){
+				while (taken < max && !this.deque.isEmpty()){
+					into.add(this.deque.poll());
+					++taken;
+				}
+			}
+			return taken;
+		}
+	}
+	// An ArrayList under its own monitor, drained with iterator.remove()
+	private static class ListBacklog extends Backlog {
+		private final List<Jack.Order> list = new ArrayList<Jack.Order>();
+		void add(Jack.Order order){
+			synchronized(this.list){
+				this.list.add(order);
+			}
+		}
+		int drain(List<Jack.Order> into, int max){
+			int taken = 0;
+			synchronized(this.list){
+				Iterator<Jack.Order> i = this.list.iterator();
+				while (taken < max && i.hasNext()){
+					into.add(i.next());
+					i.remove();
+					++taken;
+				}
+			}
+			return taken;
+		}
+	}
+}
@@ -0,0 +1,76 @@
+package pumpkins;
+import java.util.*;
+/**
+ * The PatchBenchmark measures PlantPatch bookkeeping as the number of plants
+ * grows. For each size it fills a patch, ripens every plant in random
+ * order, picks them all back in small batches and finally composts the
+ * patch away, reporting the cost per plant of each step. Plants belong to
+ * a headless Program whose clock never runs, so their ripening timers just
+ * accumulate. Run with a heap large enough for the largest size, e.g.
+ * -Xmx3g for 4M plants.
+ */
+public class PatchBenchmark {
+	private final static int[] DEFAULT_SIZES = {
+		1000, 10000, 100000, 1000000, 4000000 };
+	private final static int PICK_BATCH = 100;
+	/**
+	 * Benchmark entry point. Optional arguments are the patch sizes to test.
+	 */
+	public static void main(String[] args){
+		int[] sizes = PatchBenchmark.DEFAULT_SIZES;
+		if (args.length > 0){
+			sizes = new int[args.length];
+			for (int i = 0; i < args.length; i++)
+				sizes[i] = Integer.parseInt(args[i]);
+		}
+		Program program = new Program(new Config().setVirtualTime(true)
+				.setConsole(false).setTextLog(false));
+		// Warm up the JIT on a small patch before measuring
+		for (int i = 0; i < 20; i++)
+			PatchBenchmark.measure(program, 10000);
+		System.out.printf("%10s %12s %12s %12s %14s%n", "plants",
+				"add ns/op", "ripen ns/op", "pick ns/op", "compost ns/op");
+		for (int size : sizes){
+			double[] r = PatchBenchmark.measure(program, size);
+			System.out.printf("%10d %12.1f %12.1f %12.1f %14.1f%n",
+					size, r[0], r[1], r[2], r[3]);
+		}
+		program.shutdown();
+	}
+	// Run one patch through planting, ripening, picking and composting
+	private static double[] measure(Program program, int size){
+		Jack jack = new Jack(program);
+		PlantPatch patch = new PlantPatch(program, jack);
+		Plant[] plants = new Plant[size];
+		for (int i = 0; i < size; i++)
+			plants[i] = new Plant(program, patch, jack);
+		Collections.shuffle(Arrays.asList(plants), new Random(size));
+
+		long start = System.nanoTime();
+		for (Plant plant : plants)
+			patch.add(plant);
+		long added = System.nanoTime();
+
+		Collections.shuffle(Arrays.asList(plants), new Random(size + 1));
+		for (Plant plant : plants)
+			patch.ripen(plant);
+		long ripened = System.nanoTime();
+
+		while (patch.getPumpkinCount() > 0)
+			patch.pick(Math.min(PatchBenchmark.PICK_BATCH, patch.getPumpkinCount()));
+		long picked = System.nanoTime();
+
+		// Each call composts a handful of plants until the patch is empty
+		int calls = 0;
+		for (int remaining = size; remaining > 0; remaining -= 5, calls++)
+			patch.compost();
+		long composted = System.nanoTime();
+
+		return new double[] {
+			(double)(added - start) / size,
+			(double)(ripened - added) / size,
+			(double)(picked - ripened) / size,
+			(double)(composted - picked) / calls
+		};
+	}
+}
@@ -0,0 +1,265 @@
+package pumpkins;
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+/**
+ * The ScalingBenchmark runs whole simulations headlessly, in virtual time
+ * with no log file and no console output, over a sweep of patch sizes,
+ * order rates, thread pool sizes and patch shards. For each run it records the wall
+ * time, the number of events run and the rate at which they ran, the peak
+ * heap, the bytes allocated and the time spent in garbage collection. The
+ * results are printed as they complete and written to <out>.csv and
+ * <out>.json at the end.
+ *
+ * Options: --plants=N,... --order-intervals=N,... --pool-sizes=N,...
+ * --shards=N,... --out=prefix (default "scaling"). --ripen-heavy makes
+ * ripening the bulk of the work, with plants ripening every RIPEN_HEAVY
+ * time units on average, and sweeps 1, 2, 4 and 8 shards unless --shards
+ * is given, to show how sharding the patch scales with the pool's threads.
+ * Any other --name=value is passed on
+ * to every run as a Program option, e.g. --plant-store=array. Large
+ * patches need a large heap, e.g. -Xmx4g for 10M plants.
+ */
+public class ScalingBenchmark {
+	private final static int[] DEFAULT_PLANTS = { 1000, 10000, 100000, 1000000 };
+	private final static int[] DEFAULT_INTERVALS = { 120, 30 };
+	private final static int[] DEFAULT_POOLS = { 2, 10 };
+	private final static int[] DEFAULT_SHARDS = { 1 };
+	private final static int[] RIPEN_HEAVY_SHARDS = { 1, 2, 4, 8 };
+	private final static int RIPEN_HEAVY = 2000; // Mean ripening time
+	private final static int SAMPLE_INTERVAL = 10; // ms between allocation samples
+	private final static String[] COLUMNS = { "plants", "order_interval",
+		"pool_size", "patch_shards", "wall_ms", "events", "events_per_s", "peak_heap_mb",
+		"allocated_mb", "alloc_mb_per_s", "gc_count", "gc_ms" };
+	/**
+	 * Benchmark entry point
+	 */
+	public static void main(String[] args) throws IOException {
+		int[] plants = ScalingBenchmark.DEFAULT_PLANTS;
+		int[] intervals = ScalingBenchmark.DEFAULT_INTERVALS;
+		int[] pools = ScalingBenchmark.DEFAULT_POOLS;
+		int[] shards = null;
+		boolean ripenHeavy = false;
+		String out = "scaling";
+		List<String> options = new ArrayList<String>();
+		for (String arg : args){
+			if (arg.startsWith("--plants="))
+				plants = ScalingBenchmark.parseList(arg.substring(9));
+			else if (arg.startsWith("--order-intervals="))
+				intervals = ScalingBenchmark.parseList(arg.substring(18));
+			else if (arg.startsWith("--pool-sizes="))
+				pools = ScalingBenchmark.parseList(arg.substring(13));
+			else if (arg.startsWith("--shards="))
+				shards = ScalingBenchmark.parseList(arg.substring(9));
+			else if (arg.equals("--ripen-heavy"))
+				ripenHeavy = true;
+			else if (arg.startsWith("--out="))
+				out = arg.substring(6);
+			else
+				options.add(arg);
+		}
+		if (ripenHeavy)
+			options.add(0, "--ripen-interval=" + ScalingBenchmark.RIPEN_HEAVY);
+		if (shards == null)
+			shards = ripenHeavy ? ScalingBenchmark.RIPEN_HEAVY_SHARDS :
+					ScalingBenchmark.DEFAULT_SHARDS;
+		try {
+			ScalingBenchmark.configure(options); // Check options before running
+		} catch (IllegalArgumentException iae){
+			System.err.println(iae.getMessage());
+			return;
+		}
+
+		List<double[]> results = new ArrayList<double[]>();
+		System.out.println(String.join("\t", ScalingBenchmark.COLUMNS));
+		for (int plantCount : plants)
+			for (int interval : intervals)
+				for (int pool : pools)
+					for (int shardCount : shards){
+						Config config = ScalingBenchmark.configure(options)
+								.setInitialPlants(plantCount)
+								.setOrderInterval(interval)
+								.setPoolSize(pool)
+								.setPatchShards(shardCount);
+						double[] result = ScalingBenchmark.run(config);
+						results.add(result);
+						System.out.println(ScalingBenchmark.row(result, "\t"));
+					}
+		ScalingBenchmark.writeCsv(new File(out + ".csv"), results);
+		ScalingBenchmark.writeJson(new File(out + ".json"), results);
+	}
+	// A headless virtual-time configuration with the given options applied
+	private static Config configure(List<String> options){
+		Config config = new Config().setVirtualTime(true).setConsole(false)
+				.setTextLog(false).setJournal(false);
+		for (String arg : options){
+			if (!arg.startsWith("--"))
+				throw new IllegalArgumentException("Unexpected argument: " + arg);
+			int split = arg.indexOf('=');
+			config.set(split < 0 ? arg.substring(2) : arg.substring(2, split),
+					split < 0 ? "true" : arg.substring(split + 1));
+		}
+		return config;
+	}
+	// Run one simulation to completion and measure it. Returns the values
+	// in the order of COLUMNS.
+	private static double[] run(Config config){
+		// Start from a collected heap so one run's garbage is not charged to
+		// the next
+		System.gc();
+		List<MemoryPoolMXBean> heap = new ArrayList<MemoryPoolMXBean>();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+			if (pool.getType() == MemoryType.HEAP){
+				pool.resetPeakUsage();
+				heap.add(pool);
+			}
+		long gcCount = 0, gcTime = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()){
+			gcCount -= gc.getCollectionCount();
+			gcTime -= gc.getCollectionTime();
+		}
+		AllocationSampler sampler = new AllocationSampler();
+		Thread samplerThread = new Thread(sampler, "allocation-sampler");
+		samplerThread.setDaemon(true);
+		samplerThread.start();
+
+		long start = System.nanoTime();
+		Program program = new Program(config);
+		program.execute();
+		long wall = System.nanoTime() - start;
+
+		long allocated = sampler.stop(samplerThread);
+		// Each pool's peak may come at a different moment, so their sum is an
+		// upper bound on the peak of the whole heap
+		long peak = 0;
+		for (MemoryPoolMXBean pool : heap)
+			peak += pool.getPeakUsage().getUsed();
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()){
+			gcCount += gc.getCollectionCount();
+			gcTime += gc.getCollectionTime();
+		}
+
+		double seconds = wall / 1e9;
+		double allocatedMb = allocated / (1024.0 * 1024.0);
+		return new double[] {
+			config.getInitialPlants(),
+			config.getOrderInterval(),
+			config.getPoolSize(),
+			config.getPatchShards(),
+			wall / 1e6,
+			program.getEventCount(),
+			program.getEventCount() / seconds,
+			peak / (1024.0 * 1024.0),
+			allocatedMb,
+			allocatedMb / seconds,
+			gcCount,
+			gcTime
+		};
+	}
+	// Format a result, whole numbers without decimals
+	private static String row(double[] result, String separator){
+		StringBuilder row = new StringBuilder();
+		for (int i = 0; i < result.length; i++){
+			if (i > 0)
+				row.append(separator);
+			if (result[i] == Math.rint(result[i]) && Math.abs(result[i]) < 1e15)
+				row.append((long)result[i]);
+			else
+				row.append(String.format(Locale.ROOT, "%.2f", result[i]));
+		}
+		return row.toString();
+	}
+	// Write the results with a heading line
+	private static void writeCsv(File file, List<double[]> results) throws IOException {
+		try (PrintWriter out = new PrintWriter(new FileWriter(file))){
+			out.println(String.join(",", ScalingBenchmark.COLUMNS));
+			for (double[] result : results)
+				out.println(ScalingBenchmark.row(result, ","));
+		}
+	}
+	// Write the results as an array of objects keyed by column name
+	private static void writeJson(File file, List<double[]> results) throws IOException {
+		try (PrintWriter out = new PrintWriter(new FileWriter(file))){
+			out.println("[");
+			for (int r = 0; r < results.size(); r++){
+				String[] values = ScalingBenchmark.row(results.get(r), ",").split(",");
+				out.print("  {");
+				for (int i = 0; i < values.length; i++)
+					out.print((i > 0 ? ", " : "") + "\"" + ScalingBenchmark.COLUMNS[i] +
+							"\": " + values[i]);
+				out.println(r < results.size() - 1 ? "}," : "}");
+			}
+			out.println("]");
+		}
+	}
+	// Read a comma separated list of numbers
+	private static int[] parseList(String list){
+		String[] items = list.split(",");
+		int[] values = new int[items.length];
+		for (int i = 0; i < items.length; i++)
+			values[i] = Integer.parseInt(items[i]);
+		return values;
+	}
+	/**
+	 * The AllocationSampler totals the bytes allocated by every thread while
+	 * it runs. The JVM only reports allocation for live threads, so it polls
+	 * them and remembers the last figure for each; a thread that ends between
+	 * polls loses its last few milliseconds of allocation.
+	 */
+	static class AllocationSampler implements Runnable {
+		private final com.sun.management.ThreadMXBean threads;
+		private final Map<Long, Long> baseline;
+		private final Map<Long, Long> latest;
+		private volatile boolean active;
+		AllocationSampler(){
+			ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+			this.threads = bean instanceof com.sun.management.ThreadMXBean ?
+					(com.sun.management.ThreadMXBean)bean : null;
+			this.baseline = new HashMap<Long, Long>();
+			this.latest = new HashMap<Long, Long>();
+			this.active = true;
+			this.sample(this.baseline);
+		}
+		public void run(){
+			while (this.active){
+				synchronized(this){
+					this.sample(this.latest);
+				}
+				try {
+					Thread.sleep(ScalingBenchmark.SAMPLE_INTERVAL);
+				} catch (InterruptedException ie){
+					ie.printStackTrace();
+				}
+			}
+		}
+		// Stop sampling and get the bytes allocated since the sampler was
+		// created, or -1 if the JVM cannot measure allocation
+		long stop(Thread thread){
+			this.active = false;
+			try {
+				thread.join();
+			} catch (InterruptedException ie){
+				ie.printStackTrace();
+			}
+			if (this.threads == null)
+				return -1;
+			synchronized(this){
+				this.sample(this.latest);
+				long total = 0;
+				for (Map.Entry<Long, Long> e : this.latest.entrySet())
+					total += e.getValue() - this.baseline.getOrDefault(e.getKey(), 0L);
+				return total;
+			}
+		}
+		// Record the allocation of each live thread
+		private void sample(Map<Long, Long> into){
+			if (this.threads == null)
+				return;
+			long[] ids = this.threads.getAllThreadIds();
+			long[] bytes = this.threads.getThreadAllocatedBytes(ids);
+			for (int i = 0; i < ids.length; i++)
+				if (bytes[i] >= 0)
+					into.put(ids[i], bytes[i]);
+		}
+	}
+}
@@ -0,0 +1,48 @@
+package pumpkins;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.*;
+/**
+ * The DispatchBenchmark times Program.processEvent handing no-op events to
+ * the thread pool. An iteration is one batch of OPERATIONS events, shared
+ * among the benchmark threads, up to the pool having run them all.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 20)
+@Fork(value = 2, jvmArgsAppend = "-Xmx2g")
+@State(Scope.Benchmark)
+public class DispatchBenchmark {
+	private final static int OPERATIONS = 1 << 18;
+	private final static PumpkinEvent EVENT = Recorder.idleEvent();
+	private Recorder program;
+	/**
+	 * Create a program that sends events to its pool
+	 */
+	@Setup(Level.Trial)
+	public void start(){
+		this.program = new Recorder();
+		this.program.dispatch(true);
+	}
+	/**
+	 * Shut the program's pool down
+	 */
+	@TearDown(Level.Trial)
+	public void stop(){
+		this.program.dispatch(false);
+		this.program.shutdown();
+	}
+	/**
+	 * Hand this thread's share of the events to the pool and wait for it to
+	 * run them
+	 */
+	@Benchmark
+	public int processEvent(ThreadParams thread){
+		int operations = DispatchBenchmark.OPERATIONS / thread.getThreadCount();
+		for (int i = 0; i < operations; i++)
+			this.program.processEvent(DispatchBenchmark.EVENT);
+		this.program.awaitIdle();
+		return operations;
+	}
+}
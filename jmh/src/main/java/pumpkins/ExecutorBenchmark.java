@@ -0,0 +1,123 @@
+package pumpkins;
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+/**
+ * The ExecutorBenchmark compares the executors a Program can run its
+ * events on (see EventExecutors) on two bursts of work, each dispatched
+ * from one thread the way the clock dispatches the timers due at a tick:
+ *
+ * ripenBurst - every plant in a patch ripens at once. Each RipenEvent
+ *   moves its plant to the ripe list and tells Jack, who sends a worker
+ *   to gather.
+ * orderBurst - a crew of four receives a burst of orders. Each OrderEvent
+ *   adds an order to the backlog and hands it to an idle worker, whose
+ *   ShipEvent takes the stash lock to ship it.
+ *
+ * An iteration runs from the first dispatch until the executor has run
+ * every event in the burst, including those the burst raises. Each
+ * iteration has a fresh program, with its pool threads already started,
+ * so one executor's backlog is not charged to the next. The virtual
+ * executor needs Java 21: add it with -p executor=virtual.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 20)
+@Fork(value = 2, jvmArgsAppend = "-Xmx2g")
+@Threads(1)
+public class ExecutorBenchmark {
+	private final static int CREW = 4;
+	private final static PumpkinEvent IDLE = Recorder.idleEvent();
+	/**
+	 * A program on the given executor, started afresh for each iteration,
+	 * and a burst of size events for it
+	 */
+	@State(Scope.Benchmark)
+	public abstract static class Burst {
+		@Param({ EventExecutors.FIXED, EventExecutors.FORK_JOIN,
+			EventExecutors.CALLER_RUNS })
+		public String executor;
+		@Param({ "1000", "100000" })
+		public int size;
+		@Param({ "10" })
+		public int poolSize;
+		Program program;
+		List<PumpkinEvent> burst;
+		@Setup(Level.Iteration)
+		public void start(){
+			Config config = new Config().setVirtualTime(true).setConsole(false)
+					.setTextLog(false).setJournal(false).setJmx(false)
+					.setInitialPlants(1).setWorkers(ExecutorBenchmark.CREW)
+					.setPoolSize(this.poolSize);
+			config.set("executor", this.executor);
+			this.program = new Program(config);
+			// Start the pool threads, so the burst is not charged for them
+			for (int i = 0; i < 4 * this.poolSize; i++)
+				this.program.processEvent(ExecutorBenchmark.IDLE);
+			this.program.awaitIdle();
+			this.burst = new ArrayList<PumpkinEvent>(this.size);
+			this.stage();
+		}
+		@TearDown(Level.Iteration)
+		public void stop(){
+			this.program.stop();
+			this.program.shutdown();
+			this.program = null;
+			this.burst = null;
+		}
+		// Fill the burst with events for the program
+		abstract void stage();
+	}
+	/**
+	 * Every plant in a patch ripening at the same tick
+	 */
+	@State(Scope.Benchmark)
+	public static class Ripening extends Burst {
+		void stage(){
+			Jack jack = new Jack(this.program);
+			PlantPatch patch = new PlantPatch(this.program, jack, this.size);
+			jack.setPatch(patch);
+			for (int i = 0; i < this.size; i++){
+				Plant plant = new Plant(this.program, patch, jack, false);
+				patch.add(plant);
+				this.burst.add(new RipenEvent(this.program, plant, patch, jack));
+			}
+		}
+	}
+	/**
+	 * A burst of customer orders for a crew with an empty stash
+	 */
+	@State(Scope.Benchmark)
+	public static class Ordering extends Burst {
+		void stage(){
+			Jack jack = new Jack(this.program);
+			jack.setPatch(new PlantPatch(this.program, jack, 1));
+			OrderGenerator generator = new OrderGenerator(this.program, jack);
+			for (int i = 0; i < this.size; i++)
+				this.burst.add(new OrderEvent(generator));
+		}
+	}
+	/**
+	 * Dispatch the ripening burst and wait for it to finish
+	 */
+	@Benchmark
+	public long ripenBurst(Ripening state){
+		return ExecutorBenchmark.dispatch(state.program, state.burst);
+	}
+	/**
+	 * Dispatch the order burst and wait for it to finish
+	 */
+	@Benchmark
+	public long orderBurst(Ordering state){
+		return ExecutorBenchmark.dispatch(state.program, state.burst);
+	}
+	// Hand every event to the program, then wait until the executor has run
+	// them and everything they raised
+	private static long dispatch(Program program, List<PumpkinEvent> burst){
+		for (PumpkinEvent event : burst)
+			program.processEvent(event);
+		program.awaitIdle();
+		return program.getEventCount();
+	}
+}
@@ -0,0 +1,124 @@
+package pumpkins;
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+/**
+ * The JackBenchmark times Jack shipping a backlog of orders and completing
+ * every order of a shipment, by shipment size. Each shipment is made by a
+ * separate Jack with a full stash, about ORDERS orders in all, and every
+ * iteration stages fresh Jacks, so a measurement is one batch of about
+ * ORDERS orders shipped or completed.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 20)
+@Fork(value = 2, jvmArgsAppend = "-Xmx2g")
+@Threads(1)
+public class JackBenchmark {
+	private final static int ORDERS = 1 << 17;
+	/**
+	 * Jacks each waiting to run a ShipEvent for size orders
+	 */
+	@State(Scope.Benchmark)
+	public static class Shipments {
+		@Param({ "10", "100", "1000", "9000" })
+		public int size;
+		Recorder program;
+		List<PumpkinEvent> shipments;
+		@Setup(Level.Trial)
+		public void start(){
+			this.program = new Recorder();
+		}
+		@Setup(Level.Iteration)
+		public void stage(){
+			this.shipments = JackBenchmark.stageShipments(this.program, this.size);
+			this.program.record(false);
+		}
+		@TearDown(Level.Trial)
+		public void stop(){
+			this.program.shutdown();
+		}
+	}
+	/**
+	 * Jacks each with a shipment of size orders in transit, and the
+	 * CompleteOrderEvent of every order
+	 */
+	@State(Scope.Benchmark)
+	public static class Completions {
+		@Param({ "10", "100", "1000", "9000" })
+		public int size;
+		Recorder program;
+		List<PumpkinEvent> completions;
+		@Setup(Level.Trial)
+		public void start(){
+			this.program = new Recorder();
+		}
+		@Setup(Level.Iteration)
+		public void stage(){
+			List<PumpkinEvent> shipments =
+					JackBenchmark.stageShipments(this.program, this.size);
+			this.program.record(true);
+			for (PumpkinEvent shipment : shipments)
+				shipment.run();
+			this.completions = this.program.take();
+			this.program.record(false);
+		}
+		@TearDown(Level.Trial)
+		public void stop(){
+			this.program.shutdown();
+		}
+	}
+	/**
+	 * Jack.deliverShipment for every staged shipment
+	 */
+	@Benchmark
+	public int deliverShipment(Shipments state){
+		for (PumpkinEvent shipment : state.shipments)
+			shipment.run();
+		return state.shipments.size();
+	}
+	/**
+	 * Jack.completeOrder for every order of every staged shipment
+	 */
+	@Benchmark
+	public int completeOrder(Completions state){
+		for (PumpkinEvent completion : state.completions)
+			completion.run();
+		return state.completions.size();
+	}
+	// Give each of a number of Jacks a stash and a backlog of size orders.
+	// Returns the ShipEvent each Jack is waiting to run.
+	private static List<PumpkinEvent> stageShipments(Recorder program, int size){
+		List<PumpkinEvent> shipments = new ArrayList<PumpkinEvent>();
+		for (int n = Math.max(1, JackBenchmark.ORDERS / size); n > 0; n--){
+			Jack jack = new Jack(program);
+			PlantPatch patch = new PlantPatch(program, jack, size);
+			jack.setPatch(patch);
+
+			// Grow size pumpkins and let Jack gather them all. Picked plants
+			// set new ripening timers, which are dropped.
+			program.record(false);
+			for (int i = 0; i < size; i++){
+				Plant plant = new Plant(program, patch, null);
+				patch.add(plant);
+				patch.ripen(plant);
+			}
+			program.record(true);
+			jack.patchReady(patch);
+			for (PumpkinEvent beginGather : program.take())
+				beginGather.run();
+			List<PumpkinEvent> completeGather = program.take();
+			program.record(false);
+			for (PumpkinEvent event : completeGather)
+				event.run();
+
+			// The first order sends the only worker to ship, the rest wait
+			program.record(true);
+			for (int i = 0; i < size; i++)
+				jack.receiveOrder();
+			shipments.addAll(program.take());
+		}
+		return shipments;
+	}
+}
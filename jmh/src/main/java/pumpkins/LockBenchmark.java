@@ -0,0 +1,107 @@
+package pumpkins;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+/**
+ * The LockBenchmark measures what the component locks cost the
+ * single-threaded deterministic engine, where no other thread ever holds
+ * them. Each operation is done as the patch and Jack do it, under their
+ * monitors, and again without them:
+ *
+ * ripen - a plant moved from the unripe to the ripe PlantList and back,
+ *   taking each list's monitor as PlantPatch does (four monitor enters).
+ * stash - Jack's stash count raised and lowered under his monitor, as
+ *   incrementStash and deliverShipment do (two monitor enters).
+ *
+ * The difference between the locked and unlocked scores is the cost of an
+ * uncontended monitor enter and exit on this JVM, which a single-threaded
+ * program saves by skipping the locks, to be set against the time the
+ * engine takes per event (see ScalingBenchmark with --deterministic).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@Threads(1)
+@State(Scope.Thread)
+public class LockBenchmark {
+	private final static int PLANTS = 1024;
+	private Recorder program;
+	private PlantList unripe;
+	private PlantList ripe;
+	private int stash;
+	/**
+	 * Fill the unripe list
+	 */
+	@Setup(Level.Trial)
+	public void plant(){
+		this.program = new Recorder();
+		this.program.record(false);
+		PlantPatch patch = new PlantPatch(this.program, new Jack(this.program),
+				LockBenchmark.PLANTS);
+		this.unripe = new PlantList(LockBenchmark.PLANTS);
+		this.ripe = new PlantList(LockBenchmark.PLANTS);
+		for (int i = 0; i < LockBenchmark.PLANTS; i++)
+			this.unripe.add(new Plant(this.program, patch, null));
+	}
+	/**
+	 * Shut the program down
+	 */
+	@TearDown(Level.Trial)
+	public void stop(){
+		this.program.shutdown();
+	}
+	/**
+	 * Ripen a plant and put it back, taking each list's monitor
+	 */
+	@Benchmark
+	public int ripenLocked(){
+		Plant plant;
+		synchronized(this.unripe){
+			plant = this.unripe.removeLast();
+		}
+		synchronized(this.ripe){
+			this.ripe.add(plant);
+		}
+		synchronized(this.ripe){
+			plant = this.ripe.removeLast();
+		}
+		synchronized(this.unripe){
+			this.unripe.add(plant);
+		}
+		return this.unripe.size();
+	}
+	/**
+	 * Ripen a plant and put it back with no monitors
+	 */
+	@Benchmark
+	public int ripenUnlocked(){
+		Plant plant = this.unripe.removeLast();
+		this.ripe.add(plant);
+		plant = this.ripe.removeLast();
+		this.unripe.add(plant);
+		return this.unripe.size();
+	}
+	/**
+	 * Raise and lower the stash under a monitor
+	 */
+	@Benchmark
+	public int stashLocked(){
+		synchronized(this){
+			this.stash += 3;
+		}
+		synchronized(this){
+			this.stash -= 2;
+		}
+		return this.stash;
+	}
+	/**
+	 * Raise and lower the stash with no monitor
+	 */
+	@Benchmark
+	public int stashUnlocked(){
+		this.stash += 3;
+		this.stash -= 2;
+		return this.stash;
+	}
+}
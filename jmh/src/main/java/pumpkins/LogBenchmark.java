@@ -0,0 +1,82 @@
+package pumpkins;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+/**
+ * The LogBenchmark times formatting an event's log line, and Program.log's
+ * hand-off of an event record to the log writer, whose thread formats it
+ * as text and discards it, by the number of records the writer buffers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class LogBenchmark {
+	/**
+	 * A logged event whose description includes its order duration
+	 */
+	@State(Scope.Benchmark)
+	public static class Event {
+		private Recorder program;
+		PumpkinEvent event;
+		@Setup(Level.Trial)
+		public void start(){
+			this.program = new Recorder();
+			Jack jack = new Jack(this.program);
+			this.event = new CompleteOrderEvent(jack, jack.new Order());
+		}
+		@TearDown(Level.Trial)
+		public void stop(){
+			this.program.shutdown();
+		}
+	}
+	/**
+	 * A log writer with a buffer of the given number of records
+	 */
+	@State(Scope.Benchmark)
+	public static class Writer {
+		@Param({ "1024", "65536" })
+		public int buffer;
+		LogWriter writer;
+		@Setup(Level.Trial)
+		public void start(){
+			this.writer = new LogWriter(java.io.Writer.nullWriter(), null, null,
+					this.buffer, false);
+			this.writer.start();
+		}
+		@TearDown(Level.Trial)
+		public void stop(){
+			this.writer.close();
+		}
+	}
+	/**
+	 * A line and a counter of the thread's own
+	 */
+	@State(Scope.Thread)
+	public static class Line {
+		final StringBuilder text = new StringBuilder();
+		int timestamp;
+	}
+	/**
+	 * LogWriter.format of an event log line
+	 */
+	@Benchmark
+	public int format(Event state, Line line){
+		int i = ++line.timestamp;
+		line.text.setLength(0);
+		LogWriter.format(line.text, i, state.event.toString(), i & 8191, i & 255);
+		return line.text.length();
+	}
+	/**
+	 * LogWriter.append of an event record
+	 */
+	@Benchmark
+	public void append(Event state, Writer writer, Line line){
+		LogWriter log = writer.writer;
+		PumpkinEvent event = state.event;
+		int i = ++line.timestamp;
+		log.append(EventJournal.typeOf(event), i,
+				log.hasText() ? event.toString() : null,
+				i & 8191, i & 255, EventJournal.detailOf(event));
+	}
+}
@@ -0,0 +1,111 @@
+package pumpkins;
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.*;
+/**
+ * The PlantPatchBenchmark times the object store's ripen, pick and compost
+ * by patch size. Each changes the patch, so every iteration starts from a
+ * freshly planted patch and is one batch: size plants ripened or picked one
+ * at a time, or size / plants-to-compost composts, shared among the
+ * benchmark threads.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 20)
+@Fork(value = 2, jvmArgsAppend = "-Xmx2g")
+public class PlantPatchBenchmark {
+	/**
+	 * A patch of size plants, none of them ripe
+	 */
+	@State(Scope.Benchmark)
+	public static class Unripe {
+		@Param({ "1000", "100000", "1000000" })
+		public int size;
+		Recorder program;
+		PlantPatch patch;
+		Plant[] plants; // In random order
+		@Setup(Level.Trial)
+		public void start(){
+			this.program = new Recorder();
+			this.program.record(false);
+		}
+		@Setup(Level.Iteration)
+		public void plant(){
+			this.patch = new PlantPatch(this.program, new Jack(this.program), this.size);
+			this.plants = new Plant[this.size];
+			for (int i = 0; i < this.size; i++){
+				this.plants[i] = new Plant(this.program, this.patch, null);
+				this.patch.add(this.plants[i]);
+			}
+			Collections.shuffle(Arrays.asList(this.plants), new Random(this.size));
+			int step = this.ripeningStep();
+			for (int i = 0; step > 0 && i < this.size; i += step)
+				this.patch.ripen(this.plants[i]);
+		}
+		@TearDown(Level.Trial)
+		public void stop(){
+			this.program.shutdown();
+		}
+		// Ripen every n-th plant once planted, or none if 0
+		int ripeningStep(){
+			return 0;
+		}
+	}
+	/**
+	 * A patch of size plants, all of them ripe
+	 */
+	@State(Scope.Benchmark)
+	public static class Ripe extends Unripe {
+		int ripeningStep(){
+			return 1;
+		}
+	}
+	/**
+	 * A patch of size plants, every other one ripe
+	 */
+	@State(Scope.Benchmark)
+	public static class HalfRipe extends Unripe {
+		int ripeningStep(){
+			return 2;
+		}
+	}
+	/**
+	 * Patch.ripen, moving distinct plants from unripe to ripe
+	 */
+	@Benchmark
+	public int ripen(Unripe state, ThreadParams thread){
+		PlantPatch patch = state.patch;
+		Plant[] plants = state.plants;
+		int operations = state.size / thread.getThreadCount();
+		int first = thread.getThreadIndex() * operations;
+		for (int i = first; i < first + operations; i++)
+			patch.ripen(plants[i]);
+		return patch.getPumpkinCount();
+	}
+	/**
+	 * Patch.pick, one pumpkin at a time from an all-ripe patch
+	 */
+	@Benchmark
+	public long pick(Ripe state, ThreadParams thread){
+		PlantPatch patch = state.patch;
+		int operations = state.size / thread.getThreadCount();
+		long picked = 0;
+		for (int i = 0; i < operations; i++)
+			picked += patch.pick(1);
+		return picked;
+	}
+	/**
+	 * Patch.compost on a patch that is half ripe
+	 */
+	@Benchmark
+	public int compost(HalfRipe state, ThreadParams thread){
+		PlantPatch patch = state.patch;
+		int operations = state.size / state.program.getConfig().getPlantsToCompost() /
+				thread.getThreadCount();
+		for (int i = 0; i < operations; i++)
+			patch.compost();
+		return patch.getPumpkinCount();
+	}
+}
@@ -0,0 +1,58 @@
+package pumpkins;
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+/**
+ * The RandomBenchmark times a Gaussian ripening time drawn from one
+ * java.util.Random shared by every thread, as every component once did
+ * through the program, against one drawn from a RandomStream of the
+ * thread's own, as each component now draws from its own split stream.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class RandomBenchmark {
+	private final static int MEAN = new Config().getRipenInterval();
+	/**
+	 * The generator shared by every thread, and the root the threads'
+	 * streams are split from
+	 */
+	@State(Scope.Benchmark)
+	public static class Shared {
+		Random random;
+		RandomStream root;
+		@Setup(Level.Trial)
+		public void seed(){
+			this.random = new Random(1);
+			this.root = new RandomStream(1);
+		}
+	}
+	/**
+	 * A stream of the thread's own
+	 */
+	@State(Scope.Thread)
+	public static class Own {
+		RandomStream random;
+		@Setup(Level.Trial)
+		public void split(Shared shared){
+			this.random = shared.root.split();
+		}
+	}
+	/**
+	 * Draw from the shared java.util.Random
+	 */
+	@Benchmark
+	public int shared(Shared state){
+		return (int)(Plant.MEAN_RIPEN_DEVIATION * state.random.nextGaussian()) +
+				RandomBenchmark.MEAN;
+	}
+	/**
+	 * Draw from the thread's own RandomStream
+	 */
+	@Benchmark
+	public int stream(Own state){
+		return state.random.gaussian(RandomBenchmark.MEAN, Plant.MEAN_RIPEN_DEVIATION);
+	}
+}
@@ -0,0 +1,58 @@
+package pumpkins;
+import java.util.*;
+/**
+ * The Recorder is a headless Program whose clock never runs. Instead of
+ * going to the thread pool or the clock, events and timers are recorded
+ * so a benchmark can run them itself or simply dropped.
+ * Dispatch to the real thread pool can be turned back on.
+ */
+class Recorder extends Program {
+	private List<PumpkinEvent> recorded;
+	private boolean recording;
+	private volatile boolean dispatch;
+	Recorder(){
+		super(new Config().setVirtualTime(true).setConsole(false)
+				.setTextLog(false).setJmx(false).setInitialPlants(1));
+	}
+	// Keep (true) or drop (false) events from now on
+	void record(boolean recording){
+		this.recording = recording;
+	}
+	// Send events to the real thread pool
+	void dispatch(boolean dispatch){
+		this.dispatch = dispatch;
+	}
+	// Remove and return the events recorded so far
+	List<PumpkinEvent> take(){
+		List<PumpkinEvent> events = this.recorded;
+		this.recorded = null;
+		return events != null ? events : new ArrayList<PumpkinEvent>();
+	}
+	void processEvent(PumpkinEvent event){
+		if (this.dispatch)
+			super.processEvent(event);
+		else
+			this.keep(event);
+	}
+	void setTimer(PumpkinEvent event, int duration){
+		this.keep(event);
+	}
+	// Called from the Program constructor too, before fields are set
+	private void keep(PumpkinEvent event){
+		if (!this.recording)
+			return;
+		if (this.recorded == null)
+			this.recorded = new ArrayList<PumpkinEvent>();
+		this.recorded.add(event);
+	}
+	// A silent event that does nothing
+	static PumpkinEvent idleEvent(){
+		return new PumpkinEvent(){
+			{
+				this.silent = true;
+			}
+			protected void perform(){
+			}
+		};
+	}
+}
@@ -0,0 +1,101 @@
+package pumpkins;
+import java.util.*;
+import java.util.concurrent.*;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.*;
+/**
+ * The TimerBenchmark times the clock's timers: setting timers while a
+ * number are already pending, and a virtual-time clock expiring every
+ * pending timer and dispatching its event, including the ticks it skips
+ * between them. Each iteration starts from a fresh clock and is one batch:
+ * OPERATIONS timers set, shared among the benchmark threads, or size
+ * timers expired.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10)
+@Measurement(iterations = 20)
+@Fork(value = 2, jvmArgsAppend = "-Xmx2g")
+public class TimerBenchmark {
+	final static int OPERATIONS = 1 << 18;
+	private final static int TIMER_SPAN = 1 << 20;
+	private final static int MIN_EXPIRE_SPAN = 1 << 16;
+	private final static PumpkinEvent EVENT = Recorder.idleEvent();
+	/**
+	 * A clock with size timers pending, due at random times
+	 */
+	@State(Scope.Benchmark)
+	public static class Pending {
+		@Param({ "1000", "100000", "1000000" })
+		public int size;
+		private Recorder program;
+		Clock clock;
+		@Setup(Level.Trial)
+		public void start(){
+			this.program = new Recorder();
+		}
+		@Setup(Level.Iteration)
+		public void fill(){
+			this.clock = new Clock(this.program, true);
+			Random random = new Random(this.size);
+			for (int i = 0; i < this.size; i++)
+				this.clock.setTimer(TimerBenchmark.EVENT,
+						1 + random.nextInt(TimerBenchmark.TIMER_SPAN));
+		}
+		@TearDown(Level.Trial)
+		public void stop(){
+			this.program.shutdown();
+		}
+	}
+	/**
+	 * A clock with size timers pending, spread over at least MIN_EXPIRE_SPAN
+	 * ticks, whose events are dropped as they are dispatched
+	 */
+	@State(Scope.Benchmark)
+	public static class Expiring {
+		@Param({ "1000", "100000", "1000000" })
+		public int size;
+		private Recorder program;
+		Clock clock;
+		@Setup(Level.Trial)
+		public void start(){
+			this.program = new Recorder();
+			this.program.record(false);
+		}
+		@Setup(Level.Iteration)
+		public void fill(){
+			this.clock = new Clock(this.program, true);
+			Random random = new Random(this.size);
+			int span = Math.max(this.size, TimerBenchmark.MIN_EXPIRE_SPAN);
+			for (int i = 0; i < this.size; i++)
+				this.clock.setTimer(TimerBenchmark.EVENT, 1 + random.nextInt(span));
+		}
+		@TearDown(Level.Trial)
+		public void stop(){
+			this.program.shutdown();
+		}
+	}
+	/**
+	 * Clock.setTimer, OPERATIONS times shared among the threads
+	 */
+	@Benchmark
+	public int setTimer(Pending state, ThreadParams thread){
+		Clock clock = state.clock;
+		int operations = TimerBenchmark.OPERATIONS / thread.getThreadCount();
+		int duration = thread.getThreadIndex() * 7919;
+		for (int i = 0; i < operations; i++){
+			duration = (duration + 104729) & (TimerBenchmark.TIMER_SPAN - 1);
+			clock.setTimer(TimerBenchmark.EVENT, duration + 1);
+		}
+		return duration;
+	}
+	/**
+	 * Run the clock until no timers are left
+	 */
+	@Benchmark
+	@Threads(1)
+	public int expire(Expiring state){
+		state.clock.run();
+		return state.clock.getTimestamp();
+	}
+}